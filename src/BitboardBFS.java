@@ -0,0 +1,294 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Unit-cost breadth-first search over bitboards. Each grid row is a run
+ * of long words with one bit per tile, so a whole BFS layer grows by
+ * shifting, or-ing and masking 64 tiles at a time:
+ *
+ *   next = (frontier | left | right | up | down) & passable & ~visited
+ *
+ * Every layer is kept sparsely, as just its non-zero words. Only words
+ * next to those of the previous layer are swept, and a shortest path is
+ * recovered by walking back from the target through the layers.
+ *
+ * Like PathFinder.BFS, every move counts as one; tile costs are ignored.
+ */
+public class BitboardBFS
+{
+    private final int rows, cols, words;
+
+    // Bit (col & 63) of word [row * words + col / 64] is set for tiles
+    // that validPos accepts
+    private final long[] passable;
+
+    // Layer k holds the tiles k moves from the start: the indices of its
+    // non-zero words, ascending, and the words themselves
+    private final ArrayList<int[]> layerWords;
+    private final ArrayList<long[]> layerBits;
+
+    // Run once per grid row read and per layer swept, or null; it may
+    // throw to abandon the search (see PathFinder.BitBFS)
+    private final Runnable checkpoint;
+
+    private int reached;
+
+    public BitboardBFS(Environment env)
+    {
+        this(env, null);
+    }
+
+    public BitboardBFS(Environment env, Runnable checkpoint)
+    {
+        this.rows = env.getRows();
+        this.cols = env.getCols();
+        this.words = (this.cols + 63) >>> 6;
+        this.passable = new long[this.rows * this.words];
+        this.checkpoint = checkpoint;
+
+        for (int row = 0; row < this.rows; row++) {
+            if (checkpoint != null) {
+                checkpoint.run();
+            }
+            for (int col = 0; col < this.cols; col++) {
+                if (env.validPos(row, col)) {
+                    this.passable[row * this.words + (col >>> 6)] |= 1L << col;
+                }
+            }
+        }
+
+        this.layerWords = new ArrayList<int[]>();
+        this.layerBits = new ArrayList<long[]>();
+    }
+
+    /*
+     * Floods from [startRow][startCol] until [targetRow][targetCol] is
+     * reached, or until everything reachable is if the target is
+     * negative. Returns the target's distance in moves, or -1.
+     */
+    public int search(int startRow, int startCol, int targetRow, int targetCol)
+    {
+        this.layerWords.clear();
+        this.layerBits.clear();
+        this.reached = 0;
+
+        if (!this.isPassable(startRow, startCol)) {
+            return -1;
+        }
+
+        final var words = this.words;
+        final var visited = new long[this.rows * words];
+        var frontier = new long[this.rows * words];
+        var next = new long[this.rows * words];
+
+        final var start = startRow * words + (startCol >>> 6);
+        frontier[start] = 1L << startCol;
+        visited[start] = frontier[start];
+        this.layerWords.add(new int[] {start});
+        this.layerBits.add(new long[] {frontier[start]});
+        this.reached = 1;
+
+        final var target = targetRow < 0 ? -1 : targetRow * words + (targetCol >>> 6);
+        final var targetBit = targetRow < 0 ? 0 : 1L << targetCol;
+
+        if (target == start && (frontier[start] & targetBit) != 0) {
+            return 0;
+        }
+
+        var candidates = new int[64];
+        var indices = new int[64];
+        var bits = new long[64];
+
+        while (true) {
+            if (this.checkpoint != null) {
+                this.checkpoint.run();
+            }
+
+            final var previous = this.layerWords.get(this.layerWords.size() - 1);
+
+            // Only words next to a frontier word can grow
+            if (candidates.length < previous.length * 5) {
+                candidates = new int[previous.length * 10];
+            }
+            var n = 0;
+            for (final var i : previous) {
+                final var w = i % words;
+
+                candidates[n++] = i;
+                if (w > 0) {
+                    candidates[n++] = i - 1;
+                }
+                if (w + 1 < words) {
+                    candidates[n++] = i + 1;
+                }
+                if (i >= words) {
+                    candidates[n++] = i - words;
+                }
+                if (i + words < frontier.length) {
+                    candidates[n++] = i + words;
+                }
+            }
+            Arrays.sort(candidates, 0, n);
+
+            var count = 0;
+
+            for (int k = 0; k < n; k++) {
+                final var i = candidates[k];
+                if (k > 0 && i == candidates[k - 1]) {
+                    continue;
+                }
+
+                final var w = i % words;
+                final var x = frontier[i];
+
+                var spread = x | (x << 1) | (x >>> 1);
+                if (w > 0) {
+                    spread |= frontier[i - 1] >>> 63;
+                }
+                if (w + 1 < words) {
+                    spread |= frontier[i + 1] << 63;
+                }
+                if (i >= words) {
+                    spread |= frontier[i - words];
+                }
+                if (i + words < frontier.length) {
+                    spread |= frontier[i + words];
+                }
+
+                final var grown = spread & this.passable[i] & ~visited[i];
+                if (grown == 0) {
+                    continue;
+                }
+
+                next[i] = grown;
+                visited[i] |= grown;
+
+                if (count == indices.length) {
+                    indices = Arrays.copyOf(indices, count * 2);
+                    bits = Arrays.copyOf(bits, count * 2);
+                }
+                indices[count] = i;
+                bits[count] = grown;
+                count++;
+
+                this.reached += Long.bitCount(grown);
+            }
+
+            if (count == 0) {
+                return -1;
+            }
+
+            this.layerWords.add(Arrays.copyOf(indices, count));
+            this.layerBits.add(Arrays.copyOf(bits, count));
+
+            if (target >= 0 && (next[target] & targetBit) != 0) {
+                return this.layerWords.size() - 1;
+            }
+
+            for (final var i : previous) {
+                frontier[i] = 0;
+            }
+
+            final var swap = frontier;
+            frontier = next;
+            next = swap;
+        }
+    }
+
+    public boolean isPassable(int row, int col)
+    {
+        if (row < 0 || row >= this.rows || col < 0 || col >= this.cols) {
+            return false;
+        }
+        return (this.passable[row * this.words + (col >>> 6)] & (1L << col)) != 0;
+    }
+
+    /* Number of layers recorded by the last search, start included */
+    public int getLayerCount()
+    {
+        return this.layerWords.size();
+    }
+
+    /* Number of tiles the last search reached, start included */
+    public int getReached()
+    {
+        return this.reached;
+    }
+
+    public boolean inLayer(int layer, int row, int col)
+    {
+        if (row < 0 || row >= this.rows || col < 0 || col >= this.cols) {
+            return false;
+        }
+
+        final var ix =
+            Arrays.binarySearch(this.layerWords.get(layer), row * this.words + (col >>> 6));
+        return ix >= 0 && (this.layerBits.get(layer)[ix] & (1L << col)) != 0;
+    }
+
+    /* Moves from the start to [row][col] in the last search, or -1 */
+    public int distance(int row, int col)
+    {
+        for (int layer = 0; layer < this.layerWords.size(); layer++) {
+            if (this.inLayer(layer, row, col)) {
+                return layer;
+            }
+        }
+        return -1;
+    }
+
+    /* Distances of every tile as row * cols + col, -1 where unreached */
+    public int[] distances()
+    {
+        final var field = new int[this.rows * this.cols];
+        Arrays.fill(field, -1);
+
+        for (int layer = 0; layer < this.layerWords.size(); layer++) {
+            final var indices = this.layerWords.get(layer);
+            final var bits = this.layerBits.get(layer);
+
+            for (int k = 0; k < indices.length; k++) {
+                final var row = indices[k] / this.words;
+                final var colBase = (indices[k] % this.words) << 6;
+
+                for (var x = bits[k]; x != 0; x &= x - 1) {
+                    field[row * this.cols + colBase + Long.numberOfTrailingZeros(x)] = layer;
+                }
+            }
+        }
+        return field;
+    }
+
+    /*
+     * A shortest path from the start to [row][col] as the move index
+     * (into PathFinder.rowVector/colVector) of every step, found by
+     * stepping back to a neighbour one layer closer each time. Returns
+     * null if the last search did not reach the tile.
+     */
+    public byte[] moves(int row, int col)
+    {
+        final var distance = this.distance(row, col);
+        if (distance < 0) {
+            return null;
+        }
+
+        final var moves = new byte[distance];
+        var r = row;
+        var c = col;
+
+        for (int layer = distance - 1; layer >= 0; layer--) {
+            for (int i = 0; i < PathFinder.rowVector.length; i++) {
+                final var pr = r - PathFinder.rowVector[i];
+                final var pc = c - PathFinder.colVector[i];
+
+                if (this.inLayer(layer, pr, pc)) {
+                    moves[layer] = (byte) i;
+                    r = pr;
+                    c = pc;
+                    break;
+                }
+            }
+        }
+        return moves;
+    }
+}
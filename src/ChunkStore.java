@@ -0,0 +1,20 @@
+
+/**
+ * Backing store for a ChunkedEnvironment. Chunks are square blocks of
+ * tiles in row-major order, addressed by their chunk row and column.
+ */
+public interface ChunkStore
+{
+    /**
+     * Returns the tiles of a chunk, or null if the chunk has never been
+     * stored, in which case it is treated as all PLAIN. The returned
+     * array may be shared; callers must copy it before writing.
+     */
+    Tile[] load(int chunkRow, int chunkCol, int chunkSize);
+
+    /**
+     * Persists a modified chunk. The array is owned by the store after
+     * this call.
+     */
+    void store(int chunkRow, int chunkCol, Tile[] tiles);
+}
@@ -0,0 +1,266 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An Environment whose tiles live in fixed-size square chunks that are
+ * paged in from a ChunkStore on demand. At most maxChunks chunks are
+ * kept in memory; one not read lately is evicted (and written back if
+ * it was modified) when the cache is full.
+ *
+ * Chunks are copy-on-write: a chunk that was never modified keeps
+ * pointing at the array the store handed out, and chunks the store has
+ * never seen all share one PLAIN chunk.
+ *
+ * Reading a tile from a cached chunk takes no lock, so concurrent
+ * searches over the same map do not serialize on it; only loading,
+ * evicting and writing chunks do. Since lock-free reads cannot reorder
+ * the cache, eviction gives each chunk read since it was last passed
+ * over a second chance, instead of tracking exact recency.
+ */
+public class ChunkedEnvironment extends Environment
+{
+    private static final class Chunk
+    {
+        // Read without the lock, so a copied array must be published
+        public volatile Tile[] tiles;
+        public volatile boolean referenced, evicted;
+        public boolean shared, dirty;
+
+        public Chunk(Tile[] tiles)
+        {
+            this.tiles = tiles;
+            this.shared = true;
+            this.dirty = false;
+            this.referenced = true;
+            this.evicted = false;
+        }
+    }
+
+    /* The chunk last looked up, replaced as a whole so reads need no lock */
+    private static final class Recent
+    {
+        public final long key;
+        public final Chunk chunk;
+
+        public Recent(long key, Chunk chunk)
+        {
+            this.key = key;
+            this.chunk = chunk;
+        }
+    }
+
+    private final int chunkShift, chunkMask, chunkSize;
+    private final int maxChunks;
+
+    private final ChunkStore store;
+    private final Tile[] plainChunk;
+    // Chunks oldest first, guarded by this; resident holds the same
+    // chunks for reads that take no lock
+    private final LinkedHashMap<Long, Chunk> cache;
+    private final Map<Long, Chunk> resident;
+    private volatile Recent recent;
+
+    private final LongAdder hits;
+    private long misses, evictions, writeBacks;
+
+    public ChunkedEnvironment(
+        int width,
+        int height,
+        int chunkSize,
+        int maxChunks,
+        ChunkStore store)
+    {
+        super(width, height, null);
+
+        if (chunkSize <= 0 || Integer.bitCount(chunkSize) != 1) {
+            throw new IllegalArgumentException(
+                "Chunk size must be a power of two: " + chunkSize);
+        }
+        if (maxChunks <= 0) {
+            throw new IllegalArgumentException(
+                "Chunk cache must hold at least one chunk: " + maxChunks);
+        }
+
+        this.chunkSize = chunkSize;
+        this.chunkShift = Integer.numberOfTrailingZeros(chunkSize);
+        this.chunkMask = chunkSize - 1;
+        this.maxChunks = maxChunks;
+        this.store = store;
+
+        this.plainChunk = new Tile[chunkSize * chunkSize];
+        final var plain = new Tile(TileStatus.PLAIN, 1);
+        for (int i = 0; i < this.plainChunk.length; i++) {
+            this.plainChunk[i] = plain;
+        }
+
+        this.cache = new LinkedHashMap<Long, Chunk>(16, 0.75f, true);
+        this.resident = new ConcurrentHashMap<Long, Chunk>();
+        this.recent = null;
+        this.hits = new LongAdder();
+    }
+
+    private static long chunkKey(int chunkRow, int chunkCol)
+    {
+        return ((long) chunkRow << 32) | (chunkCol & 0xffffffffL);
+    }
+
+    private void evict(long key, Chunk chunk)
+    {
+        this.evictions++;
+
+        // Readers holding the chunk see the flag and look it up again
+        chunk.evicted = true;
+        this.cache.remove(key);
+        this.resident.remove(key);
+
+        if (chunk.dirty) {
+            this.writeBacks++;
+            this.store.store((int) (key >> 32), (int) key, chunk.tiles);
+        }
+    }
+
+    /*
+     * Evicts chunks until at most maxChunks are left. The oldest chunk
+     * goes unless it was read since it last came up, in which case it
+     * moves to the back instead, though only once per chunk in the cache
+     * since readers can keep marking chunks while this cycles. The chunk
+     * under keep, the one being loaded, always stays: its caller may be
+     * about to write to it, and the write would be lost.
+     */
+    private void trim(long keep)
+    {
+        var chances = this.cache.size();
+
+        while (this.cache.size() > this.maxChunks) {
+            final var eldest = this.cache.entrySet().iterator().next();
+            final var chunk = eldest.getValue();
+
+            if (eldest.getKey() == keep) {
+                this.cache.get(keep);
+            } else if (chunk.referenced && chances-- > 0) {
+                chunk.referenced = false;
+                this.cache.get(eldest.getKey());
+            } else {
+                this.evict(eldest.getKey(), chunk);
+            }
+        }
+    }
+
+    /* The cached chunk holding [row][col], looked up without a lock */
+    private Chunk chunkAt(int row, int col)
+    {
+        final var key = chunkKey(row >> this.chunkShift, col >> this.chunkShift);
+        final var recent = this.recent;
+
+        Chunk chunk;
+        if (recent != null && recent.key == key) {
+            chunk = recent.chunk;
+        } else {
+            chunk = this.resident.get(key);
+            if (chunk != null) {
+                this.recent = new Recent(key, chunk);
+            }
+        }
+
+        if (chunk == null || chunk.evicted) {
+            return this.load(key);
+        }
+
+        this.hits.increment();
+        if (!chunk.referenced) {
+            chunk.referenced = true;
+        }
+        return chunk;
+    }
+
+    /* The chunk for key, read in from the store if it is not cached */
+    private synchronized Chunk load(long key)
+    {
+        var chunk = this.cache.get(key);
+
+        if (chunk != null) {
+            this.hits.increment();
+            chunk.referenced = true;
+        } else {
+            this.misses++;
+
+            final var tiles =
+                this.store.load((int) (key >> 32), (int) key, this.chunkSize);
+            chunk = new Chunk(tiles != null ? tiles : this.plainChunk);
+            this.cache.put(key, chunk);
+            this.resident.put(key, chunk);
+            this.trim(key);
+        }
+
+        this.recent = new Recent(key, chunk);
+        return chunk;
+    }
+
+    private int offset(int row, int col)
+    {
+        return ((row & this.chunkMask) << this.chunkShift) | (col & this.chunkMask);
+    }
+
+    @Override protected Tile getTile(int row, int col)
+    {
+        return this.chunkAt(row, col).tiles[this.offset(row, col)];
+    }
+
+    @Override protected synchronized void putTile(int row, int col, Tile tile)
+    {
+        final var chunk = this.load(
+            chunkKey(row >> this.chunkShift, col >> this.chunkShift));
+
+        if (chunk.shared) {
+            chunk.tiles = chunk.tiles.clone();
+            chunk.shared = false;
+        }
+        chunk.tiles[this.offset(row, col)] = tile;
+        chunk.dirty = true;
+    }
+
+    /* Writes every modified chunk still in the cache back to the store. */
+    public synchronized void flush()
+    {
+        for (final var entry : this.cache.entrySet()) {
+            final var chunk = entry.getValue();
+
+            if (chunk.dirty) {
+                final long key = entry.getKey();
+
+                this.writeBacks++;
+                this.store.store((int) (key >> 32), (int) key, chunk.tiles);
+
+                // The store owns the array now, so the next write copies
+                chunk.shared = true;
+                chunk.dirty = false;
+            }
+        }
+    }
+
+    /* Cache metrics */
+    public int getChunkSize() { return this.chunkSize; }
+    public int getMaxChunks() { return this.maxChunks; }
+    public synchronized int getCachedChunks() { return this.cache.size(); }
+    public long getCacheHits() { return this.hits.sum(); }
+    public synchronized long getCacheMisses() { return this.misses; }
+    public synchronized long getEvictions() { return this.evictions; }
+    public synchronized long getWriteBacks() { return this.writeBacks; }
+
+    public synchronized double getHitRate()
+    {
+        final var hits = this.hits.sum();
+        final var total = hits + this.misses;
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    public synchronized void resetCacheStats()
+    {
+        this.hits.reset();
+        this.misses = 0;
+        this.evictions = 0;
+        this.writeBacks = 0;
+    }
+}
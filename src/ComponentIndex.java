@@ -0,0 +1,477 @@
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Connected-component labels of the tiles an agent can stand on (those
+ * Environment.validPos accepts), kept as one int label per tile. Two
+ * tiles are connected iff their labels match, which lets a search reject
+ * an unreachable target before expanding anything.
+ *
+ * The labels are built with a union-find pass over the grid and then
+ * maintained locally as tiles change. A tile becoming passable joins the
+ * components around it; a tile becoming impassable may split its own.
+ * Either way the pieces around the tile are flooded at the same pace
+ * until at most one is still growing, and only the pieces that finished
+ * are relabelled, so a change costs the size of the smaller pieces
+ * rather than a pass over the whole map.
+ *
+ * Lookups take no lock: they read optimistically and only retry under
+ * the read lock if a change ran meanwhile, so concurrent searches do not
+ * serialize on the index. Changes take the write lock.
+ */
+public class ComponentIndex
+{
+    private static final int BLOCKED = -1;
+
+    // Labels at or below this mark cells reached by a flood in progress
+    private static final int FLOODED = -2;
+
+    private final Environment env;
+    private final int rows, cols;
+
+    // Component label per cell, BLOCKED for impassable tiles
+    private final int[] labels;
+
+    // Next label never used before; labels of new pieces come from here
+    private int nextLabel;
+    private int relabelled;
+
+    private final StampedLock lock = new StampedLock();
+
+    public ComponentIndex(Environment env)
+    {
+        this.env = env;
+        this.rows = env.getRows();
+        this.cols = env.getCols();
+        this.labels = new int[this.rows * this.cols];
+
+        this.build();
+        this.nextLabel = this.labels.length;
+    }
+
+    /* Restores labels saved by getLabels, e.g. from a snapshot */
+    public ComponentIndex(Environment env, IntBuffer labels)
+    {
+        this.env = env;
+        this.rows = env.getRows();
+        this.cols = env.getCols();
+        this.labels = new int[this.rows * this.cols];
+
+        if (labels.remaining() != this.labels.length) {
+            throw new IllegalArgumentException(
+                "Label grid does not match the environment size");
+        }
+        labels.duplicate().get(this.labels);
+
+        var next = this.labels.length;
+        for (final var label : this.labels) {
+            next = Math.max(next, label + 1);
+        }
+        this.nextLabel = next;
+    }
+
+    /* Labels every component by its first cell in row-major order */
+    private void build()
+    {
+        final var parent = this.labels;
+        Arrays.fill(parent, BLOCKED);
+
+        for (int row = 0; row < this.rows; row++) {
+            for (int col = 0; col < this.cols; col++) {
+                if (!this.env.validPos(row, col)) {
+                    continue;
+                }
+                final var cell = row * this.cols + col;
+                parent[cell] = cell;
+
+                if (col > 0 && parent[cell - 1] != BLOCKED) {
+                    union(parent, cell, cell - 1);
+                }
+                if (row > 0 && parent[cell - this.cols] != BLOCKED) {
+                    union(parent, cell, cell - this.cols);
+                }
+            }
+        }
+
+        // Roots are the smallest cell of their tree, so one forward pass
+        // resolves every cell to its root
+        for (int cell = 0; cell < parent.length; cell++) {
+            if (parent[cell] != BLOCKED) {
+                parent[cell] = parent[parent[cell]];
+            }
+        }
+    }
+
+    private static int find(int[] parent, int cell)
+    {
+        // Path halving keeps the trees flat without recursion
+        while (parent[cell] != cell) {
+            parent[cell] = parent[parent[cell]];
+            cell = parent[cell];
+        }
+        return cell;
+    }
+
+    private static void union(int[] parent, int a, int b)
+    {
+        final var rootA = find(parent, a);
+        final var rootB = find(parent, b);
+
+        // Smaller index wins, which keeps every root the smallest cell
+        if (rootA < rootB) {
+            parent[rootB] = rootA;
+        } else if (rootB < rootA) {
+            parent[rootA] = rootB;
+        }
+    }
+
+    /* Must be called after the tile at [row][col] changes */
+    public void tileChanged(int row, int col)
+    {
+        if (row < 0 || row >= this.rows || col < 0 || col >= this.cols) {
+            return;
+        }
+
+        final var stamp = this.lock.writeLock();
+        try {
+            final var cell = row * this.cols + col;
+            final var wasValid = this.labels[cell] != BLOCKED;
+            final var isValid = this.env.validPos(row, col);
+
+            if (wasValid && !isValid) {
+                this.split(cell);
+            } else if (!wasValid && isValid) {
+                this.join(cell);
+            }
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    /* Passable neighbors of cell, one per distinct label if distinct */
+    private int[] neighbors(int cell, boolean distinct)
+    {
+        final var row = cell / this.cols;
+        final var col = cell % this.cols;
+        final var found = new int[PathFinder.rowVector.length];
+        var count = 0;
+
+        outer:
+        for (int i = 0; i < PathFinder.rowVector.length; i++) {
+            final var r = row + PathFinder.rowVector[i];
+            final var c = col + PathFinder.colVector[i];
+
+            if (r < 0 || r >= this.rows || c < 0 || c >= this.cols) {
+                continue;
+            }
+            final var next = r * this.cols + c;
+            if (this.labels[next] == BLOCKED) {
+                continue;
+            }
+            if (distinct) {
+                for (int j = 0; j < count; j++) {
+                    if (this.labels[found[j]] == this.labels[next]) {
+                        continue outer;
+                    }
+                }
+            }
+            found[count++] = next;
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    /* cell has become impassable; its component may fall apart */
+    private void split(int cell)
+    {
+        final var label = this.labels[cell];
+        this.labels[cell] = BLOCKED;
+
+        final var starts = this.neighbors(cell, false);
+        if (starts.length < 2) {
+            return;
+        }
+
+        final var flood = new Flood(starts);
+        final var keep = flood.survivor();
+
+        for (int i = 0; i < starts.length; i++) {
+            if (flood.group(i) != i) {
+                continue;
+            }
+            final var relabel = i == keep ? label : this.nextLabel++;
+            flood.assign(i, relabel);
+            if (i != keep) {
+                this.relabelled++;
+            }
+        }
+    }
+
+    /* cell has become passable; it joins the components around it */
+    private void join(int cell)
+    {
+        final var starts = this.neighbors(cell, true);
+        if (starts.length == 0) {
+            this.labels[cell] = this.nextLabel++;
+            return;
+        }
+        if (starts.length == 1) {
+            this.labels[cell] = this.labels[starts[0]];
+            return;
+        }
+
+        // Distinct components cannot meet, so every start is its own group
+        final var flood = new Flood(starts);
+        final var keep = flood.survivor();
+        final var label = flood.from[keep];
+
+        for (int i = 0; i < starts.length; i++) {
+            flood.assign(i, label);
+        }
+        this.labels[cell] = label;
+        this.relabelled++;
+    }
+
+    /*
+     * Floods out from several cells at once, one cell per flood in turn,
+     * each over the tiles carrying its start's label. Floods that meet
+     * are joined into one group. Stops once at most one group can still
+     * grow: every other group then holds a whole component, found at the
+     * cost of its own size. Cells reached are marked with FLOODED minus
+     * their flood until assign() labels them again.
+     */
+    private final class Flood
+    {
+        final int[] from, group, head, size;
+        final int[][] reached;
+
+        Flood(int[] starts)
+        {
+            final var count = starts.length;
+            this.from = new int[count];
+            this.group = new int[count];
+            this.head = new int[count];
+            this.size = new int[count];
+            this.reached = new int[count][];
+
+            for (int i = 0; i < count; i++) {
+                this.from[i] = ComponentIndex.this.labels[starts[i]];
+                this.group[i] = i;
+                this.reached[i] = new int[16];
+            }
+            for (int i = 0; i < count; i++) {
+                this.visit(i, starts[i]);
+            }
+
+            while (this.growing() > 1) {
+                for (int i = 0; i < count; i++) {
+                    if (this.head[i] < this.size[i]) {
+                        this.expand(i, this.reached[i][this.head[i]++]);
+                    }
+                }
+            }
+        }
+
+        private void visit(int flood, int cell)
+        {
+            if (this.size[flood] == this.reached[flood].length) {
+                this.reached[flood] = Arrays.copyOf(
+                    this.reached[flood], this.reached[flood].length * 2);
+            }
+            this.reached[flood][this.size[flood]++] = cell;
+            ComponentIndex.this.labels[cell] = FLOODED - flood;
+        }
+
+        private void expand(int flood, int cell)
+        {
+            final var labels = ComponentIndex.this.labels;
+            final var cols = ComponentIndex.this.cols;
+            final var row = cell / cols;
+            final var col = cell % cols;
+
+            for (int i = 0; i < PathFinder.rowVector.length; i++) {
+                final var r = row + PathFinder.rowVector[i];
+                final var c = col + PathFinder.colVector[i];
+
+                if (r < 0 || r >= ComponentIndex.this.rows || c < 0 || c >= cols) {
+                    continue;
+                }
+                final var next = r * cols + c;
+                final var label = labels[next];
+
+                if (label == this.from[flood]) {
+                    this.visit(flood, next);
+                } else if (label <= FLOODED) {
+                    this.merge(flood, FLOODED - label);
+                }
+            }
+        }
+
+        /* Group of flood i, named by its lowest flood */
+        int group(int i)
+        {
+            while (this.group[i] != i) {
+                i = this.group[i];
+            }
+            return i;
+        }
+
+        private void merge(int a, int b)
+        {
+            final var groupA = this.group(a);
+            final var groupB = this.group(b);
+
+            if (groupA < groupB) {
+                this.group[groupB] = groupA;
+            } else if (groupB < groupA) {
+                this.group[groupA] = groupB;
+            }
+        }
+
+        /* Groups with a flood that has cells left to expand */
+        private int growing()
+        {
+            var count = 0;
+            for (int i = 0; i < this.group.length; i++) {
+                if (this.group[i] != i) {
+                    continue;
+                }
+                for (int j = 0; j < this.group.length; j++) {
+                    if (this.head[j] < this.size[j] && this.group(j) == i) {
+                        count++;
+                        break;
+                    }
+                }
+            }
+            return count;
+        }
+
+        /*
+         * The group to keep its label: the one still growing, or, if
+         * every group finished, the one holding the most cells
+         */
+        int survivor()
+        {
+            var best = -1;
+            var bestSize = -1L;
+
+            for (int i = 0; i < this.group.length; i++) {
+                if (this.group[i] != i) {
+                    continue;
+                }
+                var cells = 0L;
+                var open = false;
+                for (int j = 0; j < this.group.length; j++) {
+                    if (this.group(j) == i) {
+                        cells += this.size[j];
+                        open |= this.head[j] < this.size[j];
+                    }
+                }
+                if (open) {
+                    return i;
+                }
+                if (cells > bestSize) {
+                    best = i;
+                    bestSize = cells;
+                }
+            }
+            return best;
+        }
+
+        /* Labels every cell the floods of group i reached */
+        void assign(int i, int label)
+        {
+            final var labels = ComponentIndex.this.labels;
+
+            for (int j = 0; j < this.group.length; j++) {
+                if (this.group(j) != i) {
+                    continue;
+                }
+                for (int k = 0; k < this.size[j]; k++) {
+                    labels[this.reached[j][k]] = label;
+                }
+            }
+        }
+    }
+
+    /* Component label of [row][col], or -1 if it cannot be stood on */
+    public int label(int row, int col)
+    {
+        if (row < 0 || row >= this.rows || col < 0 || col >= this.cols) {
+            return BLOCKED;
+        }
+        final var cell = row * this.cols + col;
+
+        // A flood in progress may have marked the cell; read it again once
+        // the change is done
+        final var optimistic = this.lock.tryOptimisticRead();
+        final var label = this.labels[cell];
+        if (this.lock.validate(optimistic)) {
+            return label;
+        }
+
+        final var stamp = this.lock.readLock();
+        try {
+            return this.labels[cell];
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    public boolean connected(int row1, int col1, int row2, int col2)
+    {
+        final var label = this.label(row1, col1);
+        return label != BLOCKED && label == this.label(row2, col2);
+    }
+
+    /*
+     * Whether an agent at [startRow][startCol] can reach the goal. The
+     * start itself need not be passable, only a tile it can step onto.
+     */
+    public boolean reachable(int startRow, int startCol, int goalRow, int goalCol)
+    {
+        final var goal = this.label(goalRow, goalCol);
+
+        if (goal == BLOCKED) {
+            return false;
+        }
+        if (this.label(startRow, startCol) == goal) {
+            return true;
+        }
+        if (this.env.validPos(startRow, startCol)) {
+            return false;
+        }
+
+        for (int i = 0; i < PathFinder.rowVector.length; i++) {
+            final var r = startRow + PathFinder.rowVector[i];
+            final var c = startCol + PathFinder.colVector[i];
+
+            if (this.label(r, c) == goal) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /* The labels, one per tile in row-major order */
+    public int[] getLabels()
+    {
+        final var stamp = this.lock.readLock();
+        try {
+            return this.labels.clone();
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /* Number of components relabelled by tiles joining or splitting them */
+    public int getRelabelled()
+    {
+        final var stamp = this.lock.readLock();
+        try {
+            return this.relabelled;
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+}
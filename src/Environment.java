@@ -1,4 +1,4 @@
-
+import java.util.Arrays;
 
 /**
  * The world in which this simulation exists. As a base
@@ -11,9 +11,23 @@
  * @author Adam Gaweda
  */
 public class Environment {
+	private static final Tile OUTSIDE = new Tile(TileStatus.IMPASSABLE, 100000000);
+	private static final Tile TARGET = new Tile(TileStatus.TARGET, 1);
+	
 	private Tile[][] tiles;
 	private int rows, cols;
 	private int targetRow, targetCol;
+	// Every TARGET tile as row * cols + col, ascending, and the terrain
+	// each one covers; targetRow/targetCol is the primary target
+	private int[] targetCells = new int[0];
+	private Tile[] underTargets = new Tile[0];
+	private boolean hasTarget;
+	private volatile ComponentIndex components;
+	// Where the map was loaded from (see MapLoader.open), null if unknown
+	private String source;
+	// Bumped by every terrain change; fingerprint() is cached against it
+	private volatile long terrainVersion;
+	private volatile long[] fingerprinted;
 	
 	public Environment() { this(10,10); }
 	public Environment(String envID){
@@ -26,71 +40,195 @@ public class Environment {
 		switch(envID){
 		case "1":
 			setObstacles1();
+			source = "1";
 			break;
 		case "2":
 			setObstacles2();
+			source = "2";
 			break;
 		default:
 			setObstacles1();
+			source = "1";
 			break;
 		}
 	}
 	public Environment(int width, int height) {
-		// Columns refer to the WIDTH of the environment
-		// Rows refer to the HEIGHT of the environment
-		this.cols = width;
-		this.rows = height;
-		tiles = new Tile[rows][cols];
+		this(width, height, new Tile[height][width]);
+		// Tiles are immutable, so every untouched cell shares one instance
+		Tile plain = new Tile(TileStatus.PLAIN, 1);
 		for(int row = 0; row < rows; row++) {
 			for (int col = 0; col < cols; col++) {
-				tiles[row][col] = new Tile(TileStatus.PLAIN, 1);
+				tiles[row][col] = plain;
 			}
 		}
 		
 	}
+	/*
+	 * Subclasses that keep their tiles somewhere other than a dense
+	 * array (see ChunkedEnvironment) pass a null grid and override
+	 * getTile/putTile instead.
+	 */
+	protected Environment(int width, int height, Tile[][] tiles) {
+		// Columns refer to the WIDTH of the environment
+		// Rows refer to the HEIGHT of the environment
+		this.cols = width;
+		this.rows = height;
+		this.tiles = tiles;
+	}
 	
 	private void setObstacles1(){
 		for (int i =1; i<cols -1; i++){
-			tiles[1][i] = new Tile(TileStatus.PUDDLE, 100000000);
-			tiles[cols - 2][i] = new Tile(TileStatus.PUDDLE, 100000000);
+			putTile(1, i, new Tile(TileStatus.PUDDLE, 100000000));
+			putTile(rows - 2, i, new Tile(TileStatus.PUDDLE, 100000000));
 		}
 		
-		tiles[1][0] = new Tile(TileStatus.MOUNTAIN, 5);
-		tiles[cols - 2][cols - 1] = new Tile(TileStatus.MOUNTAIN, 5);
+		putTile(1, 0, new Tile(TileStatus.MOUNTAIN, 5));
+		putTile(rows - 2, cols - 1, new Tile(TileStatus.MOUNTAIN, 5));
 		
-		tiles[cols/2-1][1] = new Tile(TileStatus.MOUNTAIN, 5);
-		tiles[cols/2][1] = new Tile(TileStatus.MOUNTAIN, 5);
-		tiles[cols/2-1][cols - 2] = new Tile(TileStatus.MOUNTAIN, 5);
-		tiles[cols/2][cols - 2] = new Tile(TileStatus.MOUNTAIN, 5);
+		putTile(rows/2-1, 1, new Tile(TileStatus.MOUNTAIN, 5));
+		putTile(rows/2, 1, new Tile(TileStatus.MOUNTAIN, 5));
+		putTile(rows/2-1, cols - 2, new Tile(TileStatus.MOUNTAIN, 5));
+		putTile(rows/2, cols - 2, new Tile(TileStatus.MOUNTAIN, 5));
 		
 		for (int i =3; i<cols -2; i++){
-			tiles[3][i] = new Tile(TileStatus.PUDDLE, 100000000);
+			putTile(3, i, new Tile(TileStatus.PUDDLE, 100000000));
 		}
 		
 		for (int i =2; i<cols -3; i++){
-			tiles[cols - 4][i] = new Tile(TileStatus.PUDDLE, 100000000);
+			putTile(rows - 4, i, new Tile(TileStatus.PUDDLE, 100000000));
 		}
 	}
 	
 	private void setObstacles2(){
-		for (int i =1; i<cols -1; i++){
-			tiles[i][cols/2-1] = new Tile(TileStatus.PUDDLE, 100000000);
+		for (int i =1; i<rows -1; i++){
+			putTile(i, cols/2-1, new Tile(TileStatus.PUDDLE, 100000000));
 		}
 	}
 	
+	/* Storage hooks; every tile read and write goes through these */
+	protected Tile getTile(int row, int col) { return tiles[row][col]; }
+	protected void putTile(int row, int col, Tile tile) { tiles[row][col] = tile; }
+	
 	/* Traditional Getters and Setters */
-	public Tile[][] getTiles() { return tiles; }
+	/*
+	 * The tile grid. Subclasses without a dense grid hand out a copy
+	 * built tile by tile, which reads the whole map and does not see
+	 * later changes; use getTileStatus and getTileCost instead.
+	 */
+	@Deprecated
+	public Tile[][] getTiles() {
+		if (tiles != null) return tiles;
+		Tile[][] copy = new Tile[rows][cols];
+		for (int row = 0; row < rows; row++) {
+			for (int col = 0; col < cols; col++) {
+				copy[row][col] = getTile(row, col);
+			}
+		}
+		return copy;
+	}
 	public int getRows() { return this.rows; }
 	public int getCols() { return this.cols; }
+	/* How to load this map again with MapLoader.open; null if unknown */
+	public String getSource() { return this.source; }
+	public void setSource(String source) { this.source = source; }
+	/* Moves the primary target to [row][col]; other targets stay put */
 	public void setTarget(int row, int col) {
 		// Only set if it is a coordinate within the environment
 		if (row >= 0 && row < rows && col >= 0 && col < cols) {
-			tiles[targetRow][targetCol] = new Tile(TileStatus.PLAIN, 1);
+			// Put back whatever the previous target was covering
+			if (hasTarget) {
+				removeTarget(targetRow, targetCol);
+			}
+			addTarget(row, col);
 			targetRow = row;
 			targetCol = col;
-			tiles[targetRow][targetCol] = new Tile(TileStatus.TARGET, 1);
+			hasTarget = true;
 		}
 	}
+	
+	/*
+	 * Marks [row][col] as one more TARGET; robots are done on reaching
+	 * any of them. The first target added becomes the primary one.
+	 */
+	public void addTarget(int row, int col) {
+		if (row < 0 || row >= rows || col < 0 || col >= cols) return;
+		int cell = row * cols + col;
+		int ix = Arrays.binarySearch(targetCells, cell);
+		if (ix >= 0) return;
+		ix = -ix - 1;
+		
+		int[] cells = new int[targetCells.length + 1];
+		Tile[] under = new Tile[cells.length];
+		System.arraycopy(targetCells, 0, cells, 0, ix);
+		System.arraycopy(underTargets, 0, under, 0, ix);
+		cells[ix] = cell;
+		under[ix] = getTile(row, col);
+		System.arraycopy(targetCells, ix, cells, ix + 1, targetCells.length - ix);
+		System.arraycopy(underTargets, ix, under, ix + 1, underTargets.length - ix);
+		
+		putTile(row, col, TARGET);
+		targetCells = cells;
+		underTargets = under;
+		if (!hasTarget) {
+			targetRow = row;
+			targetCol = col;
+			hasTarget = true;
+		}
+		if (components != null) {
+			components.tileChanged(row, col);
+		}
+	}
+	
+	/*
+	 * Turns the target at [row][col] back into the terrain it covered.
+	 * Removing the primary target promotes the first one left.
+	 */
+	public void removeTarget(int row, int col) {
+		if (row < 0 || row >= rows || col < 0 || col >= cols) return;
+		int ix = Arrays.binarySearch(targetCells, row * cols + col);
+		if (ix < 0) return;
+		
+		putTile(row, col, underTargets[ix]);
+		
+		int[] cells = new int[targetCells.length - 1];
+		Tile[] under = new Tile[cells.length];
+		System.arraycopy(targetCells, 0, cells, 0, ix);
+		System.arraycopy(underTargets, 0, under, 0, ix);
+		System.arraycopy(targetCells, ix + 1, cells, ix, cells.length - ix);
+		System.arraycopy(underTargets, ix + 1, under, ix, cells.length - ix);
+		targetCells = cells;
+		underTargets = under;
+		
+		if (row == targetRow && col == targetCol) {
+			hasTarget = cells.length > 0;
+			if (hasTarget) {
+				targetRow = cells[0] / cols;
+				targetCol = cells[0] % cols;
+			}
+		}
+		if (components != null) {
+			components.tileChanged(row, col);
+		}
+	}
+	
+	public boolean isTarget(int row, int col) {
+		if (row < 0 || row >= rows || col < 0 || col >= cols) return false;
+		return targetCells.length > 0 && Arrays.binarySearch(targetCells, row * cols + col) >= 0;
+	}
+	/* Whether any target can be reached from [row][col]; true if unknown */
+	public boolean targetReachable(int row, int col) {
+		ComponentIndex index = peekComponents();
+		if (index == null) return true;
+		for (int cell : targetCells) {
+			if (index.reachable(row, col, cell / cols, cell % cols)) return true;
+		}
+		return false;
+	}
+	/* Targets in row-major order */
+	public int getTargetCount() { return targetCells.length; }
+	public int getTargetRow(int ix) { return targetCells[ix] / cols; }
+	public int getTargetCol(int ix) { return targetCells[ix] % cols; }
+	
 	public int getTargetRow() { return this.targetRow; }
 	public int getTargetCol() { return this.targetCol; }
 	
@@ -99,25 +237,125 @@ public class Environment {
 	 */
 	public TileStatus getTileStatus(int row, int col) {
 		if (row < 0 || row >= rows || col < 0 || col >= cols) return TileStatus.IMPASSABLE; 
-		else return tiles[row][col].getStatus();
+		else return getTile(row, col).getStatus();
 	}
 	public int getTileCost(int row, int col){
 		if (row < 0 || row >= rows || col < 0 || col >= cols) return 100000000; 
-		else return tiles[row][col].getCost();
+		else return getTile(row, col).getCost();
+	}
+	
+	/*
+	 * Returns the terrain at a given [row][col] coordinate, i.e. the tile
+	 * the TARGET marker is covering rather than the marker itself.
+	 * Precomputed tables (see LandmarkHeuristic) are built over the
+	 * terrain so they stay valid when the target moves.
+	 */
+	public Tile getTerrain(int row, int col) {
+		if (row < 0 || row >= rows || col < 0 || col >= cols) return OUTSIDE;
+		if (targetCells.length > 0) {
+			int ix = Arrays.binarySearch(targetCells, row * cols + col);
+			if (ix >= 0) return underTargets[ix];
+		}
+		return getTile(row, col);
+	}
+	public boolean terrainPassable(int row, int col) {
+		TileStatus status = getTerrain(row, col).getStatus();
+		return status != TileStatus.IMPASSABLE && status != TileStatus.PUDDLE;
+	}
+	
+	/*
+	 * 64-bit FNV-1a hash of the dimensions and terrain. It is computed
+	 * once and kept until setTileStatuse changes the terrain, so tables
+	 * can check it on every replan without a pass over the map.
+	 */
+	public long fingerprint() {
+		long version = terrainVersion;
+		long[] cached = fingerprinted;
+		if (cached != null && cached[0] == version) return cached[1];
+		
+		long hash = hashTerrain();
+		// A change made while hashing leaves the result uncached
+		if (terrainVersion == version) fingerprinted = new long[] {version, hash};
+		return hash;
 	}
+	private long hashTerrain() {
+		long hash = 0xcbf29ce484222325L;
+		hash = (hash ^ rows) * 0x100000001b3L;
+		hash = (hash ^ cols) * 0x100000001b3L;
+		for (int row = 0; row < rows; row++) {
+			for (int col = 0; col < cols; col++) {
+				Tile tile = getTerrain(row, col);
+				hash = (hash ^ tile.getStatus().ordinal()) * 0x100000001b3L;
+				hash = (hash ^ tile.getCost()) * 0x100000001b3L;
+			}
+		}
+		return hash;
+	}
+	
+	/*
+	 * Changes the terrain at [row][col]. A target there stays a target,
+	 * now covering the new terrain.
+	 */
 	public void setTileStatuse(int row, int col, TileStatus status, int cost) {
 		// Only set if it is a coordinate within the environment
 		if (row >= 0 && row < rows && col >= 0 && col < cols) {
-			tiles[row][col] = new Tile(status, cost);
+			int ix = targetCells.length > 0
+				? Arrays.binarySearch(targetCells, row * cols + col) : -1;
+			if (ix >= 0) {
+				Tile[] under = underTargets.clone();
+				under[ix] = new Tile(status, cost);
+				underTargets = under;
+			} else {
+				putTile(row, col, new Tile(status, cost));
+			}
+			// After the write, so a fingerprint hashed meanwhile is not kept
+			terrainVersion++;
+			if (components != null) {
+				components.tileChanged(row, col);
+			}
 		}
 	}
 	
+	/*
+	 * Connected components of the passable tiles, built on first use and
+	 * kept up to date by setTileStatuse and setTarget. Only the first
+	 * call locks, so concurrent searches do not serialize here.
+	 */
+	public ComponentIndex getComponents() {
+		var index = components;
+		if (index == null) {
+			synchronized (this) {
+				index = components;
+				if (index == null) {
+					index = new ComponentIndex(this);
+					components = index;
+				}
+			}
+		}
+		return index;
+	}
+	/*
+	 * The component index if it is built already or cheap to build, as it
+	 * is over a dense grid; null for paged subclasses, where building it
+	 * would read in every chunk. Searches only check reachability up front
+	 * when there is one.
+	 */
+	public ComponentIndex peekComponents() {
+		ComponentIndex index = components;
+		if (index == null && tiles != null) index = getComponents();
+		return index;
+	}
+	/* Installs a prebuilt index, e.g. one restored from a snapshot */
+	public synchronized void setComponents(ComponentIndex components) {
+		this.components = components;
+	}
+	
 	/* Counts number of tiles that are not walls */
 	public int getNumTiles() {
 		int count = 0;
         for (int row = 0; row < rows; row++) {
             for (int col = 0; col < cols; col++) {
-                if (this.tiles[row][col].getStatus() != TileStatus.IMPASSABLE)
+                if (getTile(row, col).getStatus() != TileStatus.IMPASSABLE)
                     count++;
             }
         }
@@ -130,11 +368,11 @@ public class Environment {
 	 * outside the world (or through walls).
 	 */
 	public boolean validPos(int row, int col) {
-	    return row >= 0 && row < rows && col >= 0 && col < cols &&
-	    		tiles[row][col].getStatus() != TileStatus.IMPASSABLE &&
-	    				tiles[row][col].getStatus() != TileStatus.PUDDLE;
+	    if (row < 0 || row >= rows || col < 0 || col >= cols) return false;
+	    TileStatus status = getTile(row, col).getStatus();
+	    return status != TileStatus.IMPASSABLE && status != TileStatus.PUDDLE;
 	}
 	public boolean goalConditionMet(Robot robot) {
-		return robot.getPosRow() == targetRow && robot.getPosCol() == targetCol;
+		return isTarget(robot.getPosRow(), robot.getPosCol());
 	}
 }
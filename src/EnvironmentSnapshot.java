@@ -0,0 +1,315 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Versioned binary snapshot of an Environment together with its derived
+ * indices, written once and memory-mapped at startup so a planner is
+ * ready without rebuilding the grid or redoing any preprocessing.
+ *
+ * Layout (big-endian):
+ *
+ *   int magic "ENVS", int version, int rows, int cols,
+ *   long terrain fingerprint, int section count, then per section:
+ *   int type, long offset, long length
+ *
+ * followed by the sections themselves:
+ *
+ *   TILES       int palette size, (byte status, int cost) per palette
+ *               entry, byte index width, one palette index per tile
+ *   TARGETS     int count, int cell (row * cols + col) per target, the
+ *               primary target first
+ *   COMPONENTS  one int label per tile (ComponentIndex.getLabels)
+ *   LANDMARKS   int requested, int count, int landmark cell per
+ *               landmark, then the LandmarkHeuristic distance table
+ *
+ * Readers skip section types they do not know, so new kinds of derived
+ * data can be added without breaking older snapshots.
+ */
+public class EnvironmentSnapshot
+{
+    public static final int MAGIC = 0x454e5653; // "ENVS"
+    public static final int VERSION = 2;
+
+    public static final int TILES = 1;
+    public static final int COMPONENTS = 2;
+    public static final int LANDMARKS = 3;
+    public static final int TARGETS = 4;
+
+    private static final int HEADER_BYTES = 28;
+    private static final int SECTION_ENTRY_BYTES = 20;
+
+    private final MappedEnvironment environment;
+    private final LandmarkHeuristic landmarks;
+
+    private EnvironmentSnapshot(
+        MappedEnvironment environment,
+        LandmarkHeuristic landmarks)
+    {
+        this.environment = environment;
+        this.landmarks = landmarks;
+    }
+
+    public MappedEnvironment getEnvironment()
+    {
+        return this.environment;
+    }
+
+    /* The landmark table stored with the snapshot, or null */
+    public LandmarkHeuristic getLandmarks()
+    {
+        return this.landmarks;
+    }
+
+    private static ByteBuffer tilesSection(Environment env) throws IOException
+    {
+        final var rows = env.getRows();
+        final var cols = env.getCols();
+
+        final var palette = new ArrayList<Tile>();
+        final var paletteIndex = new HashMap<Long, Integer>();
+        final var indices = new int[rows * cols];
+
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                final var tile = env.getTerrain(row, col);
+                final long key =
+                    ((long) tile.getStatus().ordinal() << 32) | (tile.getCost() & 0xffffffffL);
+
+                var ix = paletteIndex.get(key);
+                if (ix == null) {
+                    ix = palette.size();
+                    paletteIndex.put(key, ix);
+                    palette.add(tile);
+                }
+                indices[row * cols + col] = ix;
+            }
+        }
+
+        if (palette.size() > 0xffff) {
+            throw new IOException("Too many distinct tiles to snapshot: " + palette.size());
+        }
+        final var width = palette.size() <= 0x100 ? 1 : 2;
+
+        final var section =
+            ByteBuffer.allocate(4 + palette.size() * 5 + 1 + indices.length * width);
+        section.putInt(palette.size());
+        for (final var tile : palette) {
+            section.put((byte) tile.getStatus().ordinal());
+            section.putInt(tile.getCost());
+        }
+        section.put((byte) width);
+        for (final var ix : indices) {
+            if (width == 1) {
+                section.put((byte) ix);
+            } else {
+                section.putShort((short) ix);
+            }
+        }
+        return section.flip();
+    }
+
+    private static ByteBuffer targetsSection(Environment env)
+    {
+        final var count = env.getTargetCount();
+        final var section = ByteBuffer.allocate((1 + count) * Integer.BYTES);
+
+        section.putInt(count);
+        if (count > 0) {
+            final var primary = env.getTargetRow() * env.getCols() + env.getTargetCol();
+            section.putInt(primary);
+
+            for (int ix = 0; ix < count; ix++) {
+                final var cell = env.getTargetRow(ix) * env.getCols() + env.getTargetCol(ix);
+                if (cell != primary) {
+                    section.putInt(cell);
+                }
+            }
+        }
+        return section.flip();
+    }
+
+    private static ByteBuffer componentsSection(Environment env)
+    {
+        final var labels = env.getComponents().getLabels();
+        final var section = ByteBuffer.allocate(labels.length * Integer.BYTES);
+
+        section.asIntBuffer().put(labels);
+        return section;
+    }
+
+    private static ByteBuffer landmarksSection(Environment env, LandmarkHeuristic landmarks)
+    {
+        final var table = landmarks.getTable();
+        final var count = landmarks.getLandmarkCount();
+        final var section =
+            ByteBuffer.allocate(8 + count * Integer.BYTES + table.remaining());
+
+        section.putInt(landmarks.getRequested());
+        section.putInt(count);
+        for (int ix = 0; ix < count; ix++) {
+            section.putInt(
+                landmarks.getLandmarkRow(ix) * env.getCols() + landmarks.getLandmarkCol(ix));
+        }
+        section.put(table);
+        return section.flip();
+    }
+
+    /*
+     * Writes env's terrain, targets and component labels, plus the
+     * landmark table if one is given.
+     */
+    public static void write(Path file, Environment env, LandmarkHeuristic landmarks)
+        throws IOException
+    {
+        final var types = new ArrayList<Integer>();
+        final var sections = new ArrayList<ByteBuffer>();
+
+        types.add(TILES);
+        sections.add(tilesSection(env));
+        types.add(TARGETS);
+        sections.add(targetsSection(env));
+        types.add(COMPONENTS);
+        sections.add(componentsSection(env));
+        if (landmarks != null) {
+            types.add(LANDMARKS);
+            sections.add(landmarksSection(env, landmarks));
+        }
+
+        final var header =
+            ByteBuffer.allocate(HEADER_BYTES + sections.size() * SECTION_ENTRY_BYTES);
+
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(env.getRows());
+        header.putInt(env.getCols());
+        header.putLong(env.fingerprint());
+        header.putInt(sections.size());
+
+        long offset = header.capacity();
+        for (int i = 0; i < sections.size(); i++) {
+            header.putInt(types.get(i));
+            header.putLong(offset);
+            header.putLong(sections.get(i).remaining());
+            offset += sections.get(i).remaining();
+        }
+        header.flip();
+
+        try (final var channel = FileChannel.open(
+                 file,
+                 StandardOpenOption.CREATE,
+                 StandardOpenOption.WRITE,
+                 StandardOpenOption.TRUNCATE_EXISTING)) {
+            final var buffers = new ArrayList<ByteBuffer>();
+            buffers.add(header);
+            buffers.addAll(sections);
+
+            for (final var buffer : buffers) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        }
+    }
+
+    /*
+     * Maps a snapshot. Tiles and the landmark table are used in place; the
+     * component labels are copied, since the index keeps updating them.
+     */
+    public static EnvironmentSnapshot open(Path file) throws IOException
+    {
+        final ByteBuffer mapped;
+        try (final var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (mapped.remaining() < HEADER_BYTES || mapped.getInt() != MAGIC) {
+            throw new IOException("Not an environment snapshot: " + file);
+        }
+        final var version = mapped.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot version " + version + ": " + file);
+        }
+
+        final var rows = mapped.getInt();
+        final var cols = mapped.getInt();
+        final var fingerprint = mapped.getLong();
+        final var count = mapped.getInt();
+
+        ByteBuffer tiles = null, targets = null, components = null, landmarks = null;
+
+        for (int i = 0; i < count; i++) {
+            final var type = mapped.getInt();
+            final var offset = mapped.getLong();
+            final var length = mapped.getLong();
+
+            if (offset < 0 || length < 0 || offset + length > mapped.capacity()) {
+                throw new IOException("Corrupt section table in snapshot: " + file);
+            }
+
+            final var section = mapped.duplicate();
+            section.limit((int) (offset + length)).position((int) offset);
+
+            switch (type) {
+                case TILES:
+                    tiles = section.slice();
+                    break;
+                case TARGETS:
+                    targets = section.slice();
+                    break;
+                case COMPONENTS:
+                    components = section.slice();
+                    break;
+                case LANDMARKS:
+                    landmarks = section.slice();
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        if (tiles == null) {
+            throw new IOException("Snapshot has no tiles: " + file);
+        }
+
+        final var statuses = TileStatus.values();
+        final var palette = new Tile[tiles.getInt()];
+        for (int ix = 0; ix < palette.length; ix++) {
+            palette[ix] = new Tile(statuses[tiles.get()], tiles.getInt());
+        }
+        final int width = tiles.get();
+
+        final var env = new MappedEnvironment(
+            cols, rows, palette, tiles.slice(), width, fingerprint);
+        env.setSource(file.toAbsolutePath().toString());
+
+        // Labels first: addTarget then keeps them current
+        if (components != null) {
+            env.setComponents(new ComponentIndex(env, components.asIntBuffer()));
+        }
+        if (targets != null) {
+            // The first target added becomes the primary one
+            final var targetCount = targets.getInt();
+            for (int ix = 0; ix < targetCount; ix++) {
+                final var cell = targets.getInt();
+                env.addTarget(cell / cols, cell % cols);
+            }
+        }
+
+        LandmarkHeuristic heuristic = null;
+        if (landmarks != null) {
+            final var requested = landmarks.getInt();
+            final var cells = new int[landmarks.getInt()];
+            for (int ix = 0; ix < cells.length; ix++) {
+                cells[ix] = landmarks.getInt();
+            }
+            heuristic = LandmarkHeuristic.wrap(env, requested, cells, landmarks.slice());
+        }
+
+        return new EnvironmentSnapshot(env, heuristic);
+    }
+}
@@ -0,0 +1,101 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A ChunkStore that keeps one file per chunk in a directory. Each tile
+ * is written as a status byte followed by its int cost. Tiles read back
+ * are interned, so a loaded chunk only allocates one Tile per distinct
+ * (status, cost) pair.
+ */
+public class FileChunkStore implements ChunkStore
+{
+    private static final int TILE_BYTES = 5;
+
+    private final Path directory;
+
+    private final Map<Long, Tile> interned;
+
+    public FileChunkStore(Path directory)
+    {
+        this.directory = directory;
+        this.interned = new HashMap<Long, Tile>();
+
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path chunkFile(int chunkRow, int chunkCol)
+    {
+        return this.directory.resolve(
+            String.format("chunk_%d_%d.bin", chunkRow, chunkCol));
+    }
+
+    private Tile intern(TileStatus status, int cost)
+    {
+        final long key = ((long) status.ordinal() << 32) | (cost & 0xffffffffL);
+        return this.interned.computeIfAbsent(key, (k) -> new Tile(status, cost));
+    }
+
+    public synchronized Tile[] load(int chunkRow, int chunkCol, int chunkSize)
+    {
+        final var file = this.chunkFile(chunkRow, chunkCol);
+
+        if (!Files.exists(file)) {
+            return null;
+        }
+
+        final var statuses = TileStatus.values();
+        final var tiles = new Tile[chunkSize * chunkSize];
+        final var buffer = ByteBuffer.allocate(tiles.length * TILE_BYTES);
+
+        try (final var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("Truncated chunk file " + file);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.flip();
+
+        for (int i = 0; i < tiles.length; i++) {
+            final var status = statuses[buffer.get()];
+            tiles[i] = this.intern(status, buffer.getInt());
+        }
+        return tiles;
+    }
+
+    public synchronized void store(int chunkRow, int chunkCol, Tile[] tiles)
+    {
+        final var buffer = ByteBuffer.allocate(tiles.length * TILE_BYTES);
+
+        for (final var tile : tiles) {
+            buffer.put((byte) tile.getStatus().ordinal());
+            buffer.putInt(tile.getCost());
+        }
+        buffer.flip();
+
+        try (final var channel = FileChannel.open(
+                 this.chunkFile(chunkRow, chunkCol),
+                 StandardOpenOption.CREATE,
+                 StandardOpenOption.WRITE,
+                 StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,384 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compressed path database (CPD): for every source tile, the optimal
+ * first move towards every other tile, so a shortest path is followed
+ * with one lookup per step and no search.
+ *
+ * Targets are put in Z-order (Morton order), which keeps tiles that are
+ * close on the map close in the sequence, and each source's first moves
+ * are run-length encoded along it. Tiles the source cannot reach, and
+ * the source itself, are wildcards that extend whichever run they fall
+ * in, so an open map needs only a few runs per source. A run is packed
+ * into one int as (rank << 2) | move, and a lookup is a binary search
+ * for the last run starting at or before the target's rank.
+ *
+ * Moves use AStar's edge weight over the terrain, ignoring the TARGET
+ * marker; since the marker only changes the cost of the last step, the
+ * first moves towards it are the same. Building runs one Dijkstra per
+ * source, spread over a pool of threads. Tables can be saved as a
+ * TableFile and memory-mapped back in; the environment fingerprint in its
+ * header guards against loading a table for a different map.
+ *
+ * Layout (big-endian): the TableFile header with magic "CPDB", int run
+ * count, then rows * cols + 1 run
+ * offsets indexed by source row * cols + col, then the runs.
+ */
+public class FirstMoveDatabase
+{
+    private static final int MAGIC = 0x43504442; // "CPDB"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 28;
+
+    private final int rows, cols, cells;
+    private final long fingerprint;
+
+    // Z-order rank of every tile, row * cols + col
+    private final int[] rank;
+
+    private final ByteBuffer data;
+    private final IntBuffer offsets, runs;
+
+    private FirstMoveDatabase(int rows, int cols, long fingerprint, ByteBuffer data)
+    {
+        this.rows = rows;
+        this.cols = cols;
+        this.cells = rows * cols;
+        this.fingerprint = fingerprint;
+        this.rank = ranks(rows, cols);
+        this.data = data;
+
+        final var all = data.asIntBuffer();
+        this.offsets = all.duplicate().limit(this.cells + 1).slice();
+        this.runs = all.position(this.cells + 1).slice();
+    }
+
+    /* Interleaves the bits of row and col, row taking the odd bits */
+    private static long morton(int row, int col)
+    {
+        var code = 0L;
+        for (int bit = 0; bit < 31; bit++) {
+            code |= (long) ((col >>> bit) & 1) << (2 * bit);
+            code |= (long) ((row >>> bit) & 1) << (2 * bit + 1);
+        }
+        return code;
+    }
+
+    /* Tiles as row * cols + col, in Z-order */
+    private static int[] order(int rows, int cols)
+    {
+        final var codes = new long[rows * cols];
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                codes[row * cols + col] = morton(row, col);
+            }
+        }
+        Arrays.sort(codes);
+
+        final var order = new int[codes.length];
+        for (int r = 0; r < codes.length; r++) {
+            var row = 0;
+            var col = 0;
+            for (int bit = 0; bit < 31; bit++) {
+                col |= (int) ((codes[r] >>> (2 * bit)) & 1) << bit;
+                row |= (int) ((codes[r] >>> (2 * bit + 1)) & 1) << bit;
+            }
+            order[r] = row * cols + col;
+        }
+        return order;
+    }
+
+    private static int[] ranks(int rows, int cols)
+    {
+        final var order = order(rows, cols);
+        final var rank = new int[order.length];
+
+        for (int r = 0; r < order.length; r++) {
+            rank[order[r]] = r;
+        }
+        return rank;
+    }
+
+    /* Per-thread buffers for the single-source searches */
+    private static class Scratch
+    {
+        final long[] dist;
+        final byte[] first;
+        final RadixHeap open;
+        int[] runs;
+
+        Scratch(int cells)
+        {
+            this.dist = new long[cells];
+            this.first = new byte[cells];
+            this.open = new RadixHeap();
+            this.runs = new int[64];
+        }
+    }
+
+    /* Builds the table for env's current terrain on the given number of threads */
+    public static FirstMoveDatabase build(Environment env, int threads)
+    {
+        final var rows = env.getRows();
+        final var cols = env.getCols();
+        final var cells = rows * cols;
+
+        if (cells >= 1 << 29) {
+            throw new IllegalArgumentException(
+                "Environment too large for a first-move table: " + rows + "x" + cols);
+        }
+
+        // Cost of entering each tile, read once instead of per search
+        final var weight = new int[cells];
+        for (int cell = 0; cell < cells; cell++) {
+            final var row = cell / cols;
+            final var col = cell % cols;
+            weight[cell] = env.terrainPassable(row, col)
+                ? env.getTerrain(row, col).getCost() + 1
+                : -1;
+        }
+
+        final var order = order(rows, cols);
+        final var encoded = new int[cells][];
+        final var next = new AtomicInteger();
+        final var pool = new ForkJoinPool(Math.max(1, threads));
+
+        try {
+            final var tasks = new ArrayList<ForkJoinTask<?>>();
+            for (int t = 0; t < Math.max(1, threads); t++) {
+                tasks.add(pool.submit(() -> {
+                    final var scratch = new Scratch(cells);
+
+                    for (var source = next.getAndIncrement(); source < cells;
+                         source = next.getAndIncrement()) {
+                        if (weight[source] >= 0) {
+                            encoded[source] = encode(rows, cols, weight, source, order, scratch);
+                        }
+                    }
+                }));
+            }
+            for (final var task : tasks) {
+                task.join();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        var total = 0L;
+        for (final var runs : encoded) {
+            total += runs == null ? 0 : runs.length;
+        }
+        if (HEADER_BYTES + (cells + 1 + total) * Integer.BYTES > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(
+                "First-move table too large: " + total + " runs");
+        }
+
+        final var data = ByteBuffer.allocateDirect((int) ((cells + 1 + total) * Integer.BYTES));
+        final var out = data.asIntBuffer();
+
+        var offset = 0;
+        for (final var runs : encoded) {
+            out.put(offset);
+            offset += runs == null ? 0 : runs.length;
+        }
+        out.put(offset);
+        for (final var runs : encoded) {
+            if (runs != null) {
+                out.put(runs);
+            }
+        }
+
+        return new FirstMoveDatabase(rows, cols, env.fingerprint(), data);
+    }
+
+    /* Dijkstra from source, then the runs of first moves in Z-order */
+    private static int[] encode(
+        int rows,
+        int cols,
+        int[] weight,
+        int source,
+        int[] order,
+        Scratch scratch)
+    {
+        final var rowVector = PathFinder.rowVector;
+        final var colVector = PathFinder.colVector;
+        final var dist = scratch.dist;
+        final var first = scratch.first;
+        final var open = scratch.open;
+
+        Arrays.fill(dist, Long.MAX_VALUE);
+        Arrays.fill(first, (byte) -1);
+        dist[source] = 0;
+        open.clear();
+        open.push(0, source);
+
+        while (!open.isEmpty()) {
+            final var cell = open.pop();
+            if (open.lastKey() > dist[cell]) {
+                continue;
+            }
+
+            final var row = cell / cols;
+            final var col = cell % cols;
+
+            for (int i = 0; i < rowVector.length; i++) {
+                final var nr = row + rowVector[i];
+                final var nc = col + colVector[i];
+
+                if (nr < 0 || nr >= rows || nc < 0 || nc >= cols) {
+                    continue;
+                }
+
+                final var next = nr * cols + nc;
+                if (weight[next] < 0) {
+                    continue;
+                }
+
+                final var cost = dist[cell] + weight[next];
+
+                // Ties keep the first move found, which tends to lengthen runs
+                if (cost < dist[next]) {
+                    dist[next] = cost;
+                    first[next] = cell == source ? (byte) i : first[cell];
+                    open.push(cost, next);
+                }
+            }
+        }
+
+        var runs = scratch.runs;
+        var count = 0;
+        var current = -1;
+
+        for (int r = 0; r < order.length; r++) {
+            final int move = first[order[r]];
+            if (move < 0 || move == current) {
+                continue;
+            }
+
+            if (count == runs.length) {
+                runs = Arrays.copyOf(runs, count * 2);
+            }
+            // The first run starts at rank 0 so every lookup lands in one
+            final var start = count == 0 ? 0 : r;
+            runs[count++] = (start << 2) | move;
+            current = move;
+        }
+
+        scratch.runs = runs;
+        return Arrays.copyOf(runs, count);
+    }
+
+    public int getRows()
+    {
+        return this.rows;
+    }
+
+    public int getCols()
+    {
+        return this.cols;
+    }
+
+    /* Total number of runs over all sources */
+    public int getRunCount()
+    {
+        return this.runs.limit();
+    }
+
+    /* Size of the table itself, as saved without its header */
+    public long getSizeBytes()
+    {
+        return this.data.capacity();
+    }
+
+    /* Whether the table was built for env's current terrain */
+    public boolean matches(Environment env)
+    {
+        return env.getRows() == this.rows && env.getCols() == this.cols
+            && env.fingerprint() == this.fingerprint;
+    }
+
+    /*
+     * Optimal first move from [row][col] towards [targetRow][targetCol].
+     * DO_NOTHING on the target itself or from an impassable tile. The
+     * answer is arbitrary for a target the source cannot reach, so check
+     * reachability (e.g. with the ComponentIndex) first.
+     */
+    public Action firstMove(int row, int col, int targetRow, int targetCol)
+    {
+        final var source = row * this.cols + col;
+        final var target = targetRow * this.cols + targetCol;
+
+        var lo = this.offsets.get(source);
+        var hi = this.offsets.get(source + 1) - 1;
+
+        if (source == target || lo > hi) {
+            return Action.DO_NOTHING;
+        }
+
+        // Last run whose start rank is at most the target's
+        final var key = (this.rank[target] << 2) | 3;
+        while (lo < hi) {
+            final var mid = (lo + hi + 1) >>> 1;
+            if (this.runs.get(mid) <= key) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return PathFinder.mapActionIx(this.runs.get(lo) & 3);
+    }
+
+    public void save(Path file) throws IOException
+    {
+        final var header = ByteBuffer.allocate(HEADER_BYTES - TableFile.HEADER_BYTES);
+        header.putInt(this.getRunCount());
+        header.flip();
+
+        final var body = this.data.duplicate();
+        body.clear();
+
+        TableFile.write(
+            file, MAGIC, VERSION, this.rows, this.cols, this.fingerprint, header, body);
+    }
+
+    /* Memory-maps a saved table, or returns null if it is for another map */
+    public static FirstMoveDatabase load(Environment env, Path file) throws IOException
+    {
+        final var mapped =
+            TableFile.map(file, MAGIC, VERSION, HEADER_BYTES, "first-move table", env);
+        if (mapped == null) {
+            return null;
+        }
+
+        final var rows = env.getRows();
+        final var cols = env.getCols();
+        final var count = mapped.getInt();
+
+        final var body = mapped.slice();
+        if (body.remaining() != ((long) rows * cols + 1 + count) * Integer.BYTES) {
+            throw new IOException("Truncated first-move table: " + file);
+        }
+        return new FirstMoveDatabase(rows, cols, env.fingerprint(), body);
+    }
+
+    /* Uses the table saved at file for env, building and saving one if need be */
+    public static FirstMoveDatabase loadOrBuild(
+        Environment env,
+        int threads,
+        Path file) throws IOException
+    {
+        return TableFile.loadOrBuild(
+            file,
+            saved -> load(env, saved),
+            () -> build(env, threads),
+            FirstMoveDatabase::save);
+    }
+}
@@ -0,0 +1,368 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * ALT (A*, Landmarks, Triangle inequality) lower bounds for AStar.
+ *
+ * A handful of landmark tiles are chosen by farthest-point selection and
+ * the exact cost from each landmark to every tile is stored, landmark
+ * major, in an off-heap int table. Costs use AStar's edge weight:
+ * entering a tile costs its tile cost plus one for the move. Because
+ * that weight only depends on the tile entered, the cost back to a
+ * landmark follows from the cost out of it,
+ *
+ *   d(n, L) = d(L, n) + w(L) - w(n)
+ *
+ * so one table per landmark gives both triangle inequality bounds.
+ *
+ * Tables are built over the terrain (ignoring the TARGET marker) and can
+ * be saved as a TableFile and memory-mapped back in; the environment
+ * fingerprint in its header guards against loading a table for a
+ * different map.
+ */
+public class LandmarkHeuristic
+{
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private static final int MAGIC = 0x414c544c; // "ALTL"
+    private static final int VERSION = 1;
+    private static final int FIXED_HEADER_BYTES = 32;
+
+    private final Environment env;
+    private final int rows, cols, cells;
+    private final int requested;
+    private final int[] landmarks;
+    private final long fingerprint;
+    private final ByteBuffer data;
+    private final IntBuffer distances;
+
+    private LandmarkHeuristic(
+        Environment env,
+        int requested,
+        int[] landmarks,
+        ByteBuffer data)
+    {
+        this.env = env;
+        this.requested = requested;
+        this.rows = env.getRows();
+        this.cols = env.getCols();
+        this.cells = this.rows * this.cols;
+        this.landmarks = landmarks;
+        this.fingerprint = env.fingerprint();
+        this.data = data;
+        this.distances = data.asIntBuffer();
+    }
+
+    /* Picks up to count landmarks and computes their distance tables */
+    public static LandmarkHeuristic build(Environment env, int count)
+    {
+        final var cells = env.getRows() * env.getCols();
+        final var cols = env.getCols();
+
+        var seed = -1;
+        for (int cell = 0; cell < cells && seed < 0; cell++) {
+            if (env.terrainPassable(cell / cols, cell % cols)) {
+                seed = cell;
+            }
+        }
+
+        if (seed < 0 || count <= 0) {
+            return new LandmarkHeuristic(
+                env, count, new int[0], ByteBuffer.allocateDirect(0));
+        }
+
+        final var table = new int[cells];
+        final var minDist = new int[cells];
+        final var chosen = new int[count];
+        final var data = ByteBuffer.allocateDirect(count * cells * Integer.BYTES);
+        final var out = data.asIntBuffer();
+
+        // The first landmark is the tile farthest from an arbitrary seed,
+        // every later one the tile farthest from all landmarks so far
+        dijkstra(env, seed, table);
+        Arrays.fill(minDist, UNREACHABLE);
+        var next = farthest(table);
+
+        var found = 0;
+        while (found < count && next >= 0) {
+            chosen[found] = next;
+            dijkstra(env, next, table);
+            out.put(table);
+
+            for (int cell = 0; cell < cells; cell++) {
+                minDist[cell] = Math.min(minDist[cell], table[cell]);
+            }
+            found++;
+            next = farthest(minDist);
+        }
+
+        return new LandmarkHeuristic(
+            env,
+            count,
+            Arrays.copyOf(chosen, found),
+            data.limit(found * cells * Integer.BYTES).slice());
+    }
+
+    private static int farthest(int[] dist)
+    {
+        var best = -1;
+        for (int cell = 0; cell < dist.length; cell++) {
+            if (dist[cell] != UNREACHABLE && dist[cell] > 0
+                && (best < 0 || dist[cell] > dist[best])) {
+                best = cell;
+            }
+        }
+        return best;
+    }
+
+    /* Single-source costs over the terrain, using a heap of packed longs */
+    private static void dijkstra(Environment env, int source, int[] dist)
+    {
+        final var cols = env.getCols();
+
+        Arrays.fill(dist, UNREACHABLE);
+        dist[source] = 0;
+
+        var heap = new long[64];
+        var size = 0;
+        heap[size++] = source;
+
+        while (size > 0) {
+            final var top = heap[0];
+            heap[0] = heap[--size];
+            siftDown(heap, size);
+
+            final var d = (int) (top >>> 32);
+            final var cell = (int) top;
+            if (d > dist[cell]) {
+                continue;
+            }
+
+            final var row = cell / cols;
+            final var col = cell % cols;
+
+            for (int i = 0; i < PathFinder.rowVector.length; i++) {
+                final var r = row + PathFinder.rowVector[i];
+                final var c = col + PathFinder.colVector[i];
+
+                if (!env.terrainPassable(r, c)) {
+                    continue;
+                }
+
+                final var neighbor = r * cols + c;
+                final var nd = d + env.getTerrain(r, c).getCost() + 1;
+
+                if (nd < dist[neighbor]) {
+                    dist[neighbor] = nd;
+
+                    if (size == heap.length) {
+                        heap = Arrays.copyOf(heap, size * 2);
+                    }
+                    heap[size] = ((long) nd << 32) | neighbor;
+                    siftUp(heap, size++);
+                }
+            }
+        }
+    }
+
+    private static void siftUp(long[] heap, int ix)
+    {
+        final var item = heap[ix];
+        while (ix > 0) {
+            final var parent = (ix - 1) >>> 1;
+            if (heap[parent] <= item) {
+                break;
+            }
+            heap[ix] = heap[parent];
+            ix = parent;
+        }
+        heap[ix] = item;
+    }
+
+    private static void siftDown(long[] heap, int size)
+    {
+        if (size == 0) {
+            return;
+        }
+        final var item = heap[0];
+        var ix = 0;
+        while (true) {
+            var child = 2 * ix + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (heap[child] >= item) {
+                break;
+            }
+            heap[ix] = heap[child];
+            ix = child;
+        }
+        heap[ix] = item;
+    }
+
+    /*
+     * Wraps a distance table laid out like the one build produces, e.g. a
+     * section of a memory-mapped EnvironmentSnapshot.
+     */
+    public static LandmarkHeuristic wrap(
+        Environment env,
+        int requested,
+        int[] landmarks,
+        ByteBuffer table)
+    {
+        if (table.remaining()
+            != landmarks.length * env.getRows() * env.getCols() * Integer.BYTES) {
+            throw new IllegalArgumentException(
+                "Landmark table does not match the environment size");
+        }
+        return new LandmarkHeuristic(env, requested, landmarks, table.slice());
+    }
+
+    /* Whether the table was built for env's current terrain */
+    public boolean matches(Environment env)
+    {
+        return env.getRows() == this.rows && env.getCols() == this.cols
+            && env.fingerprint() == this.fingerprint;
+    }
+
+    /* Read-only view of the raw distance table */
+    public ByteBuffer getTable()
+    {
+        final var table = this.data.asReadOnlyBuffer();
+        table.clear();
+        return table;
+    }
+
+    /* Landmark count asked for when building; fewer may have been found */
+    public int getRequested()
+    {
+        return this.requested;
+    }
+
+    public int getLandmarkCount()
+    {
+        return this.landmarks.length;
+    }
+
+    public int getLandmarkRow(int ix)
+    {
+        return this.landmarks[ix] / this.cols;
+    }
+
+    public int getLandmarkCol(int ix)
+    {
+        return this.landmarks[ix] % this.cols;
+    }
+
+    /* Exact terrain cost from landmark ix to [row][col], or UNREACHABLE */
+    public int distance(int ix, int row, int col)
+    {
+        return this.distances.get(ix * this.cells + row * this.cols + col);
+    }
+
+    /*
+     * Admissible lower bound on AStar's cost from [row][col] to the target
+     * at [targetRow][targetCol].
+     */
+    public int lowerBound(int row, int col, int targetRow, int targetCol)
+    {
+        final var n = row * this.cols + col;
+        final var t = targetRow * this.cols + targetCol;
+
+        if (n == t) {
+            return 0;
+        }
+
+        final var wn = this.env.getTerrain(row, col).getCost() + 1;
+        final var wt = this.env.getTerrain(targetRow, targetCol).getCost() + 1;
+
+        var best = 0;
+        for (int ix = 0; ix < this.landmarks.length; ix++) {
+            final var base = ix * this.cells;
+            final var dn = this.distances.get(base + n);
+            final var dt = this.distances.get(base + t);
+
+            if (dn == UNREACHABLE || dt == UNREACHABLE) {
+                continue;
+            }
+            best = Math.max(best, Math.max(dt - dn, dn - dt + wt - wn));
+        }
+
+        if (best == 0) {
+            return 0;
+        }
+
+        // The TARGET marker replaces the terrain's cost on the last step
+        final var marker = this.env.getTileCost(targetRow, targetCol)
+            - this.env.getTerrain(targetRow, targetCol).getCost();
+        return Math.max(0, best + marker);
+    }
+
+    public void save(Path file) throws IOException
+    {
+        final var header = ByteBuffer.allocate(
+            FIXED_HEADER_BYTES - TableFile.HEADER_BYTES + this.landmarks.length * Integer.BYTES);
+        header.putInt(this.requested);
+        header.putInt(this.landmarks.length);
+        for (final var landmark : this.landmarks) {
+            header.putInt(landmark);
+        }
+        header.flip();
+
+        final var body = this.data.duplicate();
+        body.clear();
+
+        TableFile.write(
+            file, MAGIC, VERSION, this.rows, this.cols, this.fingerprint, header, body);
+    }
+
+    /* Memory-maps a saved table, or returns null if it is for another map */
+    public static LandmarkHeuristic load(Environment env, Path file)
+        throws IOException
+    {
+        final var mapped =
+            TableFile.map(file, MAGIC, VERSION, FIXED_HEADER_BYTES, "landmark table", env);
+        if (mapped == null) {
+            return null;
+        }
+
+        final var requested = mapped.getInt();
+        final var count = mapped.getInt();
+
+        final var landmarks = new int[count];
+        for (int ix = 0; ix < count; ix++) {
+            landmarks[ix] = mapped.getInt();
+        }
+
+        final var body = mapped.slice();
+        if (body.remaining() != count * env.getRows() * env.getCols() * Integer.BYTES) {
+            throw new IOException("Truncated landmark table: " + file);
+        }
+        return new LandmarkHeuristic(env, requested, landmarks, body);
+    }
+
+    /*
+     * Uses the table saved at file if it is for env and count landmarks,
+     * otherwise builds and saves one
+     */
+    public static LandmarkHeuristic loadOrBuild(
+        Environment env,
+        int count,
+        Path file) throws IOException
+    {
+        return TableFile.loadOrBuild(
+            file,
+            saved -> {
+                final var loaded = load(env, saved);
+                return loaded != null && loaded.requested == count ? loaded : null;
+            },
+            () -> build(env, count),
+            LandmarkHeuristic::save);
+    }
+}
@@ -0,0 +1,327 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Seeded procedural maps for benchmarks and soak tests.
+ *
+ * Every tile is a pure function of the seed and its coordinates: a
+ * SplitMix64 hash decides obstacles, maze passages and room doors, and
+ * value noise over a coarse lattice lays MOUNTAIN and PUDDLE fields over
+ * the open tiles. No tile depends on any other, so regions can be
+ * generated in any order on any number of threads and always come out
+ * the same. Tiles are shared flyweights, one instance per kind.
+ *
+ * Styles:
+ *   RANDOM  each tile IMPASSABLE with probability obstacleDensity
+ *   MAZE    a perfect maze of one-tile corridors on even rows and
+ *           columns; every cell opens north or west (binary tree)
+ *   ROOMS   roomSize square rooms behind one-tile walls, with a door
+ *           to the room right of and below each room
+ *
+ * As a ChunkStore the generator backs a ChunkedEnvironment of any size
+ * whose chunks are only generated when first touched.
+ */
+public class MapGenerator implements ChunkStore
+{
+    public enum Style
+    {
+        RANDOM, MAZE, ROOMS
+    }
+
+    private static final Tile PLAIN = new Tile(TileStatus.PLAIN, 1);
+    private static final Tile WALL = new Tile(TileStatus.IMPASSABLE, 100000000);
+    private static final Tile MOUNTAIN = new Tile(TileStatus.MOUNTAIN, 5);
+    private static final Tile PUDDLE = new Tile(TileStatus.PUDDLE, 100000000);
+
+    // Rows generated per task when filling a dense grid
+    private static final int REGION_ROWS = 64;
+
+    // Salts keeping the different random decisions independent
+    private static final long OBSTACLE = 1, PASSAGE = 2, DOOR = 3, NOISE = 4;
+
+    private final Style style;
+    private final long seed;
+
+    // Chunks written back by a ChunkedEnvironment, which the store owns
+    private final Map<Long, Tile[]> stored;
+
+    // Share of tiles that are walls in RANDOM maps
+    public double obstacleDensity;
+
+    // Side of the rooms in ROOMS maps
+    public int roomSize;
+
+    // Noise above mountainLevel is MOUNTAIN, below puddleLevel PUDDLE;
+    // the noise lies in [0, 1), so 1 and 0 switch either off
+    public double mountainLevel, puddleLevel;
+
+    // Tiles between noise lattice points; larger gives wider fields
+    public int noiseScale;
+
+    public MapGenerator(Style style, long seed)
+    {
+        this.style = style;
+        this.seed = seed;
+        this.stored = new ConcurrentHashMap<Long, Tile[]>();
+
+        this.obstacleDensity = 0.2;
+        this.roomSize = 8;
+        this.mountainLevel = 0.75;
+        this.puddleLevel = 0.0;
+        this.noiseScale = 16;
+    }
+
+    public Style getStyle()
+    {
+        return this.style;
+    }
+
+    public long getSeed()
+    {
+        return this.seed;
+    }
+
+    private static long mix(long z)
+    {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private long hash(long salt, int row, int col)
+    {
+        return mix(mix(mix(this.seed + salt * 0x9e3779b97f4a7c15L) + row) + col);
+    }
+
+    /* Uniform in [0, 1) */
+    private double unit(long salt, int row, int col)
+    {
+        return (this.hash(salt, row, col) >>> 11) * 0x1.0p-53;
+    }
+
+    /* Smoothly interpolated lattice noise in [0, 1) */
+    private double noise(int row, int col)
+    {
+        final var scale = Math.max(1, this.noiseScale);
+        final var r0 = Math.floorDiv(row, scale);
+        final var c0 = Math.floorDiv(col, scale);
+        final var fr = smooth((double) (row - r0 * scale) / scale);
+        final var fc = smooth((double) (col - c0 * scale) / scale);
+
+        final var top = lerp(
+            this.unit(NOISE, r0, c0), this.unit(NOISE, r0, c0 + 1), fc);
+        final var bottom = lerp(
+            this.unit(NOISE, r0 + 1, c0), this.unit(NOISE, r0 + 1, c0 + 1), fc);
+        return lerp(top, bottom, fr);
+    }
+
+    private static double smooth(double t)
+    {
+        return t * t * (3 - 2 * t);
+    }
+
+    private static double lerp(double a, double b, double t)
+    {
+        return a + (b - a) * t;
+    }
+
+    private boolean open(int row, int col)
+    {
+        switch (this.style) {
+            case MAZE:
+                return this.mazeOpen(row, col);
+            case ROOMS:
+                return this.roomsOpen(row, col);
+            case RANDOM:
+            default:
+                return this.unit(OBSTACLE, row, col) >= this.obstacleDensity;
+        }
+    }
+
+    /* Whether maze cell [i][j] opens west rather than north */
+    private boolean opensWest(int i, int j)
+    {
+        if (i == 0 || j == 0) {
+            return i == 0;
+        }
+        return (this.hash(PASSAGE, i, j) & 1) != 0;
+    }
+
+    private boolean mazeOpen(int row, int col)
+    {
+        final var oddRow = (row & 1) != 0;
+        final var oddCol = (col & 1) != 0;
+
+        if (!oddRow && !oddCol) {
+            return true;
+        }
+        if (oddRow && oddCol) {
+            return false;
+        }
+        if (oddCol) {
+            // Between cells [i][j - 1] and [i][j]
+            return this.opensWest(row >> 1, (col + 1) >> 1);
+        }
+        // Between cells [i - 1][j] and [i][j]
+        return !this.opensWest((row + 1) >> 1, col >> 1);
+    }
+
+    private boolean roomsOpen(int row, int col)
+    {
+        final var size = Math.max(1, this.roomSize);
+        final var period = size + 1;
+        final var inRow = row % period;
+        final var inCol = col % period;
+
+        if (inRow < size && inCol < size) {
+            return true;
+        }
+        if (inRow == size && inCol == size) {
+            return false;
+        }
+
+        // Wall segment between two rooms; one tile of it is the door
+        final var roomRow = row / period;
+        final var roomCol = col / period;
+        if (inRow == size) {
+            return inCol == Math.floorMod(this.hash(DOOR, 2 * roomRow, roomCol), size);
+        }
+        return inRow == Math.floorMod(this.hash(DOOR, 2 * roomRow + 1, roomCol), size);
+    }
+
+    /* The tile at [row][col] of this generator's map */
+    public Tile tile(int row, int col)
+    {
+        if (!this.open(row, col)) {
+            return WALL;
+        }
+        if (this.mountainLevel >= 1 && this.puddleLevel <= 0) {
+            return PLAIN;
+        }
+
+        final var level = this.noise(row, col);
+        if (level >= this.mountainLevel) {
+            return MOUNTAIN;
+        }
+        if (level < this.puddleLevel) {
+            return PUDDLE;
+        }
+        return PLAIN;
+    }
+
+    /*
+     * A dense width x height Environment, filled in bands of rows spread
+     * over the given number of threads.
+     */
+    public Environment generate(int width, int height, int threads)
+    {
+        final var grid = new Tile[height][];
+        final var regions = (height + REGION_ROWS - 1) / REGION_ROWS;
+        final var next = new AtomicInteger();
+        final var workers = Math.max(1, threads);
+        final var pool = new ForkJoinPool(workers);
+
+        try {
+            final var tasks = new ArrayList<ForkJoinTask<?>>();
+            for (int t = 0; t < workers; t++) {
+                tasks.add(pool.submit(() -> {
+                    for (var region = next.getAndIncrement(); region < regions;
+                         region = next.getAndIncrement()) {
+                        final var end = Math.min(height, (region + 1) * REGION_ROWS);
+
+                        for (int row = region * REGION_ROWS; row < end; row++) {
+                            final var tiles = new Tile[width];
+                            for (int col = 0; col < width; col++) {
+                                tiles[col] = this.tile(row, col);
+                            }
+                            grid[row] = tiles;
+                        }
+                    }
+                }));
+            }
+            for (final var task : tasks) {
+                task.join();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        return new Environment(width, height, grid);
+    }
+
+    /*
+     * A width x height ChunkedEnvironment generated chunk by chunk as it
+     * is read, keeping at most maxChunks chunks in memory.
+     */
+    public ChunkedEnvironment chunked(int width, int height, int chunkSize, int maxChunks)
+    {
+        return new ChunkedEnvironment(width, height, chunkSize, maxChunks, this);
+    }
+
+    private static long chunkKey(int chunkRow, int chunkCol)
+    {
+        return ((long) chunkRow << 32) | (chunkCol & 0xffffffffL);
+    }
+
+    @Override public Tile[] load(int chunkRow, int chunkCol, int chunkSize)
+    {
+        final var written = this.stored.get(chunkKey(chunkRow, chunkCol));
+        if (written != null) {
+            return written;
+        }
+
+        final var tiles = new Tile[chunkSize * chunkSize];
+        for (int r = 0; r < chunkSize; r++) {
+            for (int c = 0; c < chunkSize; c++) {
+                tiles[r * chunkSize + c] =
+                    this.tile(chunkRow * chunkSize + r, chunkCol * chunkSize + c);
+            }
+        }
+        return tiles;
+    }
+
+    @Override public void store(int chunkRow, int chunkCol, Tile[] tiles)
+    {
+        this.stored.put(chunkKey(chunkRow, chunkCol), tiles);
+    }
+
+    /*
+     * Generates a map and reports how long it took, optionally writing it
+     * out as an EnvironmentSnapshot for PlanningService:
+     *
+     *   MapGenerator RANDOM|MAZE|ROOMS width height seed [out.snap]
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 4) {
+            System.err.println(
+                "usage: MapGenerator RANDOM|MAZE|ROOMS width height seed [out.snap]");
+            System.exit(1);
+        }
+
+        final var generator =
+            new MapGenerator(Style.valueOf(args[0]), Long.parseLong(args[3]));
+        final var width = Integer.parseInt(args[1]);
+        final var height = Integer.parseInt(args[2]);
+        final var threads = Runtime.getRuntime().availableProcessors();
+
+        final var start = System.nanoTime();
+        final var env = generator.generate(width, height, threads);
+        final var millis = (System.nanoTime() - start) / 1e6;
+
+        System.out.printf(
+            "%s %dx%d seed %s: %.0f ms on %d threads, fingerprint %016x%n",
+            generator.getStyle(), width, height, args[3], millis, threads,
+            env.fingerprint());
+
+        if (args.length > 4) {
+            EnvironmentSnapshot.write(Paths.get(args[4]), env, null);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Reads grid maps in the Moving AI benchmark format
+ * (https://movingai.com/benchmarks/formats.html) into an Environment.
+ *
+ * Terrain is mapped onto tile statuses as follows:
+ *   . G    PLAIN, cost 1
+ *   S      MOUNTAIN, cost 5 (swamp)
+ *   W      PUDDLE (water)
+ *   @ O T  IMPASSABLE
+ */
+public class MapLoader
+{
+    /*
+     * Opens a map named the way Environment.getSource names it: one of
+     * the built-in environment ids "1" and "2", an EnvironmentSnapshot
+     * ending in .snap or a map file in the format above.
+     */
+    public static Environment open(String source) throws IOException
+    {
+        if (source.equals("1") || source.equals("2")) {
+            return new Environment(source);
+        }
+        if (source.endsWith(".snap")) {
+            return EnvironmentSnapshot.open(Paths.get(source)).getEnvironment();
+        }
+        return load(Paths.get(source));
+    }
+
+    public static Environment load(Path file) throws IOException
+    {
+        final var lines = Files.readAllLines(file);
+
+        int height = -1, width = -1, line = 0;
+
+        for (; line < lines.size(); line++) {
+            final var fields = lines.get(line).trim().split("\\s+");
+
+            if (fields[0].equals("height")) {
+                height = Integer.parseInt(fields[1]);
+            } else if (fields[0].equals("width")) {
+                width = Integer.parseInt(fields[1]);
+            } else if (fields[0].equals("map")) {
+                line++;
+                break;
+            }
+        }
+
+        if (height < 0 || width < 0) {
+            throw new IOException("Missing map dimensions in " + file);
+        }
+        if (lines.size() - line < height) {
+            throw new IOException("Truncated map grid in " + file);
+        }
+
+        final var env = new Environment(width, height);
+        env.setSource(file.toAbsolutePath().toString());
+
+        for (int row = 0; row < height; row++) {
+            final var text = lines.get(line + row);
+
+            for (int col = 0; col < width && col < text.length(); col++) {
+                switch (text.charAt(col)) {
+                    case '.':
+                    case 'G':
+                        break;
+                    case 'S':
+                        env.setTileStatuse(row, col, TileStatus.MOUNTAIN, 5);
+                        break;
+                    case 'W':
+                        env.setTileStatuse(
+                            row, col, TileStatus.PUDDLE, 100000000);
+                        break;
+                    default:
+                        env.setTileStatuse(
+                            row, col, TileStatus.IMPASSABLE, 100000000);
+                        break;
+                }
+            }
+        }
+
+        return env;
+    }
+}
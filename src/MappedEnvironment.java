@@ -0,0 +1,107 @@
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An Environment read straight out of a memory-mapped
+ * EnvironmentSnapshot. Every tile is a 1 or 2 byte index into a small
+ * palette of distinct tiles, so nothing is parsed or allocated per tile
+ * at startup. The mapping is read-only; tiles changed afterwards
+ * (including the TARGET marker) live in a copy-on-write overlay, with
+ * one bit per cell marking the tiles it holds, so reading any other
+ * tile never touches the overlay map.
+ */
+public class MappedEnvironment extends Environment
+{
+    private final Tile[] palette;
+    private final ByteBuffer indices;
+    private final int indexBytes;
+    private final long fingerprint;
+
+    private final Map<Integer, Tile> overlay;
+    private final long[] overlaid;
+
+    public MappedEnvironment(
+        int width,
+        int height,
+        Tile[] palette,
+        ByteBuffer indices,
+        int indexBytes,
+        long fingerprint)
+    {
+        super(width, height, null);
+
+        if (indexBytes != 1 && indexBytes != 2) {
+            throw new IllegalArgumentException(
+                "Palette indices must be 1 or 2 bytes: " + indexBytes);
+        }
+        if (indices.remaining() != width * height * indexBytes) {
+            throw new IllegalArgumentException(
+                "Tile indices do not match the environment size");
+        }
+
+        this.palette = palette;
+        this.indices = indices.slice();
+        this.indexBytes = indexBytes;
+        this.fingerprint = fingerprint;
+        this.overlay = new ConcurrentHashMap<Integer, Tile>();
+        this.overlaid = new long[(width * height + 63) >>> 6];
+    }
+
+    private Tile mappedTile(int cell)
+    {
+        final var ix = this.indexBytes == 1
+            ? this.indices.get(cell) & 0xff
+            : this.indices.getShort(cell * 2) & 0xffff;
+        return this.palette[ix];
+    }
+
+    @Override protected Tile getTile(int row, int col)
+    {
+        final var cell = row * this.getCols() + col;
+
+        if ((this.overlaid[cell >>> 6] & (1L << cell)) != 0) {
+            final var tile = this.overlay.get(cell);
+            if (tile != null) {
+                return tile;
+            }
+        }
+        return this.mappedTile(cell);
+    }
+
+    @Override protected synchronized void putTile(int row, int col, Tile tile)
+    {
+        final var cell = row * this.getCols() + col;
+        final var mapped = this.mappedTile(cell);
+
+        // Writing back what the snapshot holds just drops the override.
+        // The bit is set only once the tile is in, and cleared first.
+        if (mapped.getStatus() == tile.getStatus()
+            && mapped.getCost() == tile.getCost()) {
+            this.overlaid[cell >>> 6] &= ~(1L << cell);
+            this.overlay.remove(cell);
+        } else {
+            this.overlay.put(cell, tile);
+            this.overlaid[cell >>> 6] |= 1L << cell;
+        }
+    }
+
+    /* The stored fingerprint holds until the terrain itself is changed */
+    @Override public long fingerprint()
+    {
+        final var cols = this.getCols();
+
+        // TARGET markers cover terrain rather than change it, unless the
+        // terrain under one has been changed since
+        for (final var cell : this.overlay.keySet()) {
+            final var terrain = this.getTerrain(cell / cols, cell % cols);
+            final var mapped = this.mappedTile(cell);
+
+            if (terrain.getStatus() != mapped.getStatus()
+                || terrain.getCost() != mapped.getCost()) {
+                return super.fingerprint();
+            }
+        }
+        return this.fingerprint;
+    }
+}
@@ -0,0 +1,20 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event covering path reconstruction in
+ * PathFinder.getPath.
+ */
+@Name("csc411.PathReconstruction")
+@Label("Path Reconstruction")
+@Category({"CSC411", "Planning"})
+@Description("Walking the parent map back from the target to the start")
+public class PathEvent extends jdk.jfr.Event
+{
+    @Label("Rows") public int rows;
+    @Label("Columns") public int cols;
+
+    @Label("Path Length") public int pathLength;
+}
@@ -10,6 +10,7 @@ import java.util.Objects;
 import java.util.PriorityQueue;
 import java.util.Queue;
 import java.util.Random;
+import java.util.TreeSet;
 
 public class PathFinder
 {
@@ -19,16 +20,89 @@ public class PathFinder
 
     public boolean reachedTarget;
 
+    // Print the solved grid from search(); benchmarks turn this off
+    public boolean quiet;
+
+    // Number of nodes whose neighbors were generated
+    public int expanded;
+
+    // Optional recording of expansions and parent updates
+    public SearchTrace trace;
+
+    // Optional ALT lower bounds, tightening the heuristic on maze-like maps
+    public LandmarkHeuristic landmarks;
+
+    // First-move table that CPD follows instead of searching
+    public FirstMoveDatabase firstMoves;
+
+    // Most search nodes SMAStar keeps in memory at once
+    public int nodeBudget;
+
+    // Largest number of nodes SMAStar actually held
+    public int peakNodes;
+
+    // Expansions after which SMAStar gives up, 0 for no limit; a budget
+    // barely above the solution depth can otherwise thrash for very long.
+    // Defaults to DEFAULT_EXPANSION_FACTOR per tile of the map
+    public long expansionLimit;
+
+    // How the last search() ended, RUNNING while it is under way
+    public SearchStatus status;
+
+    // Cooperative stop: cancel() may come from any thread, the deadline
+    // is a System.nanoTime() value checked every few expansions
+    private volatile boolean cancelled;
+    private boolean hasDeadline;
+    private long deadline;
+
     public boolean[][] visitedTiles;
 
     public Node startNode, endNode;
 
+    // All of the environment's targets when searching for the nearest
+    // one (no fixed goal) and there are several, else null, with their
+    // bounding box
+    private int[] goalRows, goalCols;
+    private int goalTop, goalBottom, goalLeft, goalRight;
+
+    // Whether endNode was given explicitly rather than found as TARGET
+    private boolean fixedGoal;
+
     public Map<Node, Node> pathMap;
     public ArrayList<Node> path;
 
     public static int[] rowVector = {0, 0, -1, 1};
     public static int[] colVector = {1, -1, 0, 0};
 
+    public static final String[] ALGORITHMS = {
+        "BFS", "DFS", "AStar", "RBFS", "HillClimbing", "IntAStar", "IntDijkstra",
+        "SMAStar", "BitBFS"};
+
+    public static final int DEFAULT_NODE_BUDGET = 1 << 16;
+
+    public static final int DEFAULT_EXPANSION_FACTOR = 256;
+
+    // Expansions between two looks at the clock
+    private static final int DEADLINE_CHECK_MASK = 63;
+
+    // Most targets the heuristic takes the minimum over; beyond that it
+    // falls back to the distance to their bounding box
+    private static final int GOAL_SCAN_LIMIT = 32;
+
+    /* Unwinds a search, however deeply it recursed, once it must stop */
+    private static final class Stopped extends RuntimeException
+    {
+        private static final long serialVersionUID = 1L;
+
+        final SearchStatus reason;
+
+        Stopped(SearchStatus reason)
+        {
+            super(reason.name(), null, false, false);
+            this.reason = reason;
+        }
+    }
+
     public static Action mapActionIx(int ix)
     {
         return Action.values()[ix];
@@ -89,9 +163,111 @@ public class PathFinder
         }
     }
 
+    /* A node of SMAStar's search tree; see SMAStar() */
+    private static class BoundedNode
+    {
+        final int row, col, move, depth;
+        final long g, id;
+        final BoundedNode parent;
+        final ArrayList<BoundedNode> children;
+
+        // Cost bound when generated, and the backed-up bound: the best
+        // of the children and forgotten bound once expanded
+        final long base;
+        long f;
+        // Best f among children dropped to stay within budget
+        long forgotten;
+        // f or forgotten, whichever this node is queued under
+        long key;
+        boolean queued, expanded;
+
+        BoundedNode(
+            int row, int col, int move, long g, long f, BoundedNode parent, long id)
+        {
+            this.row = row;
+            this.col = col;
+            this.move = move;
+            this.g = g;
+            this.base = f;
+            this.f = f;
+            this.parent = parent;
+            this.depth = parent == null ? 0 : parent.depth + 1;
+            this.id = id;
+            this.children = new ArrayList<BoundedNode>(4);
+            this.forgotten = Long.MAX_VALUE;
+        }
+    }
+
+    /*
+     * Lossy table of the best g each tile has been generated with, sized
+     * by the node budget rather than the map. Entries are overwritten on
+     * collision, which only costs SMAStar some duplicate work.
+     */
+    private static class Transpositions
+    {
+        final int[] cells, depths, parents;
+        final long[] costs;
+        final int mask;
+
+        Transpositions(int budget)
+        {
+            final var size = Integer.highestOneBit(Math.min(budget, 1 << 28)) << 2;
+
+            this.cells = new int[size];
+            this.depths = new int[size];
+            this.parents = new int[size];
+            this.costs = new long[size];
+            this.mask = size - 1;
+
+            Arrays.fill(this.cells, -1);
+        }
+
+        int slot(int cell)
+        {
+            return (cell * 0x9e3779b1 >>> 7) & this.mask;
+        }
+
+        /*
+         * Whether the tile was already generated as cheaply and no deeper
+         * by another parent. The copy recorded first wins a tie, so equal
+         * cost paths, of which grids have very many, are held only once;
+         * regenerating that copy from its own parent is not a duplicate.
+         */
+        boolean dominated(int cell, long g, int depth, int parent)
+        {
+            final var slot = this.slot(cell);
+
+            if (this.cells[slot] != cell) {
+                return false;
+            }
+            if (this.costs[slot] != g) {
+                return this.costs[slot] < g;
+            }
+            if (this.depths[slot] != depth) {
+                return this.depths[slot] < depth;
+            }
+            return this.parents[slot] != parent;
+        }
+
+        void record(int cell, long g, int depth, int parent)
+        {
+            final var slot = this.slot(cell);
+
+            if (this.cells[slot] != cell || !this.dominated(cell, g, depth, parent)) {
+                this.cells[slot] = cell;
+                this.costs[slot] = g;
+                this.depths[slot] = depth;
+                this.parents[slot] = parent;
+            }
+        }
+    }
+
     public PathFinder(Environment env, int rowPos, int colPos)
     {
         this.reachedTarget = false;
+        this.quiet = false;
+        this.expanded = 0;
+        this.nodeBudget = DEFAULT_NODE_BUDGET;
 
         this.env = env;
         this.rowPos = rowPos;
@@ -100,22 +276,72 @@ public class PathFinder
         this.startNode = new Node(this.rowPos, this.colPos);
 
         this.visitedTiles = new boolean[this.getRows()][this.getCols()];
+        this.expansionLimit =
+            (long) DEFAULT_EXPANSION_FACTOR * this.getRows() * this.getCols();
 
         this.pathMap = new HashMap<Node, Node>();
         this.path = new ArrayList<Node>();
 
-        for (int i = 0; i < this.getRows(); i++) {
-            for (int j = 0; j < this.getCols(); j++) {
-                this.visitedTiles[i][j] = false;
-
-                final var status = this.env.getTileStatus(i, j);
-                if (status == TileStatus.TARGET) {
-                    this.endNode = new Node(i, j);
-                }
+        // The search stops at whichever target it reaches first
+        final var targets = this.env.getTargetCount();
+        if (targets > 0) {
+            this.endNode = new Node(this.env.getTargetRow(), this.env.getTargetCol());
+        }
+        if (targets > 1) {
+            this.goalRows = new int[targets];
+            this.goalCols = new int[targets];
+            this.goalTop = Integer.MAX_VALUE;
+            this.goalLeft = Integer.MAX_VALUE;
+            this.goalBottom = Integer.MIN_VALUE;
+            this.goalRight = Integer.MIN_VALUE;
+
+            for (int ix = 0; ix < targets; ix++) {
+                final var row = this.env.getTargetRow(ix);
+                final var col = this.env.getTargetCol(ix);
+
+                this.goalRows[ix] = row;
+                this.goalCols[ix] = col;
+                this.goalTop = Math.min(this.goalTop, row);
+                this.goalBottom = Math.max(this.goalBottom, row);
+                this.goalLeft = Math.min(this.goalLeft, col);
+                this.goalRight = Math.max(this.goalRight, col);
             }
         }
     }
 
+    /*
+     * Searches for an explicit goal instead of the environment's TARGET
+     * tile, so many queries can share one Environment without moving its
+     * target around.
+     */
+    public PathFinder(
+        Environment env,
+        int rowPos,
+        int colPos,
+        int targetRow,
+        int targetCol)
+    {
+        this.reachedTarget = false;
+        this.quiet = false;
+        this.expanded = 0;
+        this.nodeBudget = DEFAULT_NODE_BUDGET;
+
+        this.env = env;
+        this.rowPos = rowPos;
+        this.colPos = colPos;
+
+        this.startNode = new Node(this.rowPos, this.colPos);
+        this.endNode = new Node(targetRow, targetCol);
+        this.fixedGoal = true;
+
+        this.visitedTiles = new boolean[this.getRows()][this.getCols()];
+        this.expansionLimit =
+            (long) DEFAULT_EXPANSION_FACTOR * this.getRows() * this.getCols();
+
+        this.pathMap = new HashMap<Node, Node>();
+        this.path = new ArrayList<Node>();
+    }
+
     public void reset()
     {
         for (int i = 0; i < this.getRows(); i++) {
@@ -126,15 +352,172 @@ public class PathFinder
         this.pathMap.clear();
     }
 
+    /*
+     * Readies this finder for a new query towards an explicit goal on the
+     * same Environment, reusing its buffers instead of allocating a new
+     * PathFinder. Options (quiet, landmarks, budgets) are left as they are.
+     */
+    public void prepare(int rowPos, int colPos, int targetRow, int targetCol)
+    {
+        this.reachedTarget = false;
+        this.expanded = 0;
+        this.peakNodes = 0;
+
+        this.rowPos = rowPos;
+        this.colPos = colPos;
+        this.startNode = new Node(rowPos, colPos);
+        this.endNode = new Node(targetRow, targetCol);
+        this.fixedGoal = true;
+        this.goalRows = null;
+        this.goalCols = null;
+        this.status = null;
+        this.cancelled = false;
+        this.hasDeadline = false;
+
+        for (final var row : this.visitedTiles) {
+            Arrays.fill(row, false);
+        }
+        this.pathMap.clear();
+        // search() hands path out, so it is replaced rather than cleared
+        this.path = new ArrayList<Node>();
+    }
+
+    /*
+     * Asks a running search to stop; safe to call from any thread. The
+     * search notices at its next expansion and ends as CANCELLED.
+     */
+    public void cancel()
+    {
+        this.cancelled = true;
+    }
+
+    public boolean isCancelled()
+    {
+        return this.cancelled;
+    }
+
+    /* Stops the search as TIMED_OUT once System.nanoTime() passes nanoTime */
+    public void setDeadline(long nanoTime)
+    {
+        this.deadline = nanoTime;
+        this.hasDeadline = true;
+    }
+
+    /* Stops the search as TIMED_OUT after timeoutNanos from now */
+    public void setTimeout(long timeoutNanos)
+    {
+        this.setDeadline(System.nanoTime() + timeoutNanos);
+    }
+
+    public void clearDeadline()
+    {
+        this.hasDeadline = false;
+    }
+
+    /* Why the search has to stop right now, or null to carry on */
+    public SearchStatus stopReason()
+    {
+        if (this.cancelled) {
+            return SearchStatus.CANCELLED;
+        }
+        if (this.hasDeadline && System.nanoTime() - this.deadline >= 0) {
+            return SearchStatus.TIMED_OUT;
+        }
+        return null;
+    }
+
+    /* Called on every expansion; only reads the clock every few of them */
+    private void checkpoint()
+    {
+        this.checkpoint(this.expanded);
+    }
+
+    /* Like checkpoint(), reading the clock whenever tick is a multiple of 64 */
+    private void checkpoint(long tick)
+    {
+        if (this.cancelled
+            || (this.hasDeadline && (tick & DEADLINE_CHECK_MASK) == 0)) {
+            final var reason = this.stopReason();
+            if (reason != null) {
+                throw new Stopped(reason);
+            }
+        }
+    }
+
     public double manhattanDistance(Node n1, Node n2)
     {
         return Math.abs(n1.x - n2.x) + Math.abs(n1.y - n2.y);
     }
 
+    /*
+     * Lower bound on the cost from [row][col] to the nearest of several
+     * targets: the smallest of the single-target bounds, which is as
+     * consistent as they are. With many targets, the distance to their
+     * bounding box instead, a weaker but constant-time bound.
+     */
+    private long nearestGoalBound(int row, int col)
+    {
+        if (this.goalRows.length > GOAL_SCAN_LIMIT) {
+            return this.goalBoxDistance(row, col);
+        }
+
+        var best = Long.MAX_VALUE;
+        for (int ix = 0; ix < this.goalRows.length; ix++) {
+            final var goalRow = this.goalRows[ix];
+            final var goalCol = this.goalCols[ix];
+
+            long bound = Math.abs(row - goalRow) + Math.abs(col - goalCol);
+            if (this.landmarks != null && bound < best) {
+                bound = Math.max(bound, this.landmarks.lowerBound(row, col, goalRow, goalCol));
+            }
+            best = Math.min(best, bound);
+        }
+        return best;
+    }
+
+    private int goalBoxDistance(int row, int col)
+    {
+        return Math.max(0, this.goalTop - row) + Math.max(0, row - this.goalBottom)
+            + Math.max(0, this.goalLeft - col) + Math.max(0, col - this.goalRight);
+    }
+
+    /* Fewest moves from [row][col] to the goal, or to the nearest goal */
+    private int minSteps(int row, int col)
+    {
+        if (this.goalRows != null) {
+            if (this.goalRows.length > GOAL_SCAN_LIMIT) {
+                return this.goalBoxDistance(row, col);
+            }
+
+            var best = Integer.MAX_VALUE;
+            for (int ix = 0; ix < this.goalRows.length; ix++) {
+                best = Math.min(
+                    best,
+                    Math.abs(row - this.goalRows[ix]) + Math.abs(col - this.goalCols[ix]));
+            }
+            return best;
+        }
+        if (this.endNode == null) {
+            return 0;
+        }
+        return Math.abs(row - this.endNode.x) + Math.abs(col - this.endNode.y);
+    }
+
     public double heuristic(Node node)
     {
+        if (this.goalRows != null) {
+            return this.nearestGoalBound(node.x, node.y);
+        }
         if (this.endNode != null) {
-            return manhattanDistance(node, this.endNode);
+            final var distance = manhattanDistance(node, this.endNode);
+
+            if (this.landmarks == null) {
+                return distance;
+            }
+            return Math.max(
+                distance,
+                this.landmarks.lowerBound(
+                    node.x, node.y, this.endNode.x, this.endNode.y));
         } else {
             return 1000;
         }
@@ -199,6 +582,9 @@ public class PathFinder
 
     public void getPath()
     {
+        final var event = new PathEvent();
+        event.begin();
+
         var node = this.endNode;
 
         this.path.add(this.endNode);
@@ -208,6 +594,14 @@ public class PathFinder
             this.path.add(node);
         }
         Collections.reverse(this.path);
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.rows = this.getRows();
+            event.cols = this.getCols();
+            event.pathLength = this.path.size();
+            event.commit();
+        }
     }
 
     public ArrayList<Node> getNeighbors(Node node)
@@ -215,7 +609,14 @@ public class PathFinder
         int baseRow = node.x;
         int baseCol = node.y;
 
+        this.checkpoint();
+
         final var neighbors = new ArrayList<Node>();
+        this.expanded++;
+
+        if (this.trace != null) {
+            this.trace.expand(baseRow, baseCol);
+        }
 
         for (int i = 0; i < rowVector.length; i++) {
             final var row = baseRow + rowVector[i];
@@ -233,9 +634,51 @@ public class PathFinder
         return neighbors;
     }
 
+    /* Records that node was reached from current by node.action */
+    public void setParent(Node node, Node current)
+    {
+        this.pathMap.put(node, new Node(current.x, current.y, node.action));
+
+        if (this.trace != null) {
+            this.trace.parent(node.x, node.y, node.action);
+        }
+    }
+
+    public boolean isGoal(int row, int col)
+    {
+        if (this.fixedGoal) {
+            return row == this.endNode.x && col == this.endNode.y;
+        }
+        return this.env.getTileStatus(row, col) == TileStatus.TARGET;
+    }
+
+    /*
+     * Whether the start's component holds the goal, or any of the goals.
+     * Without a component index (see Environment.peekComponents) this is
+     * left to the search itself and assumed true.
+     */
+    public boolean goalReachable()
+    {
+        final var index = this.env.peekComponents();
+
+        if (index == null) {
+            return true;
+        }
+        if (this.goalRows != null) {
+            return this.env.targetReachable(this.rowPos, this.colPos);
+        }
+        return index.reachable(this.rowPos, this.colPos, this.endNode.x, this.endNode.y);
+    }
+
+    /* Cost of stepping onto [row][col]: its tile cost plus one for the move */
+    public int stepCost(int row, int col)
+    {
+        return this.env.getTileCost(row, col) + 1;
+    }
+
     public boolean finishSearch(Node node)
     {
-        if (this.env.getTileStatus(node.x, node.y) == TileStatus.TARGET) {
+        if (this.isGoal(node.x, node.y)) {
             this.endNode = node;
             this.reachedTarget = true;
             return true;
@@ -267,7 +710,7 @@ public class PathFinder
                 rowStack.addFirst(node.x);
                 colStack.addFirst(node.y);
 
-                pathMap.put(node, new Node(current.x, current.y, node.action));
+                this.setParent(node, current);
             });
         }
     }
@@ -295,7 +738,7 @@ public class PathFinder
                 rowQueue.add(node.x);
                 colQueue.add(node.y);
 
-                pathMap.put(node, new Node(current.x, current.y, node.action));
+                this.setParent(node, current);
             });
         }
     }
@@ -340,8 +783,7 @@ public class PathFinder
                         gMap.put(node, tmpG);
                         fMap.put(node, f);
 
-                        pathMap.put(
-                            node, new Node(current.x, current.y, node.action));
+                        this.setParent(node, current);
 
                         if (!openSet.contains(node)) {
                             openSet.add(node);
@@ -351,6 +793,390 @@ public class PathFinder
         }
     }
 
+    /* Integer lower bound on the cost to the target, 0 without one */
+    public long intHeuristic(int row, int col)
+    {
+        if (this.goalRows != null) {
+            return this.nearestGoalBound(row, col);
+        }
+        if (this.endNode == null) {
+            return 0;
+        }
+
+        final long distance =
+            Math.abs(row - this.endNode.x) + Math.abs(col - this.endNode.y);
+
+        if (this.landmarks == null) {
+            return distance;
+        }
+        return Math.max(
+            distance,
+            this.landmarks.lowerBound(row, col, this.endNode.x, this.endNode.y));
+    }
+
+    public void IntAStar()
+    {
+        this.integerSearch(true);
+    }
+
+    public void IntDijkstra()
+    {
+        this.integerSearch(false);
+    }
+
+    /*
+     * BFS over bitboards, 64 tiles per word operation (see BitboardBFS).
+     * Like BFS() it counts moves, not tile costs.
+     */
+    public void BitBFS()
+    {
+        if (this.endNode == null) {
+            return;
+        }
+
+        // A sweep covers a whole layer, so each one looks at the clock
+        final var bfs = new BitboardBFS(this.env, () -> this.checkpoint(0));
+        var goalRow = this.endNode.x;
+        var goalCol = this.endNode.y;
+        var distance = -1;
+
+        if (this.goalRows == null) {
+            distance = bfs.search(this.rowPos, this.colPos, goalRow, goalCol);
+        } else {
+            // Flood everything, then take the closest target
+            bfs.search(this.rowPos, this.colPos, -1, -1);
+            final var field = bfs.distances();
+            for (int ix = 0; ix < this.goalRows.length; ix++) {
+                final var d = field[this.goalRows[ix] * this.getCols() + this.goalCols[ix]];
+                if (d >= 0 && (distance < 0 || d < distance)) {
+                    distance = d;
+                    goalRow = this.goalRows[ix];
+                    goalCol = this.goalCols[ix];
+                }
+            }
+        }
+
+        this.expanded += bfs.getReached();
+        if (distance < 0) {
+            return;
+        }
+
+        final var moves = bfs.moves(goalRow, goalCol);
+        var row = this.rowPos;
+        var col = this.colPos;
+
+        for (final var move : moves) {
+            final var parent = new Node(row, col, mapActionIx(move));
+            row += rowVector[move];
+            col += colVector[move];
+            this.pathMap.put(new Node(row, col), parent);
+        }
+        this.finishSearch(new Node(row, col));
+    }
+
+    /*
+     * Follows the optimal first moves stored in firstMoves from the start
+     * to the target: one table lookup per step and no search. Gives up if
+     * no table is set or a move leads off the passable tiles, as it does
+     * once the terrain has changed since the table was built. With several
+     * targets it heads for endNode, the primary one, not the nearest.
+     */
+    public void CPD()
+    {
+        if (this.firstMoves == null || this.endNode == null) {
+            return;
+        }
+
+        final var cells = this.getRows() * this.getCols();
+        var row = this.rowPos;
+        var col = this.colPos;
+
+        for (int steps = 0; !this.isGoal(row, col); steps++) {
+            this.checkpoint(steps);
+
+            final var action =
+                this.firstMoves.firstMove(row, col, this.endNode.x, this.endNode.y);
+            if (action == Action.DO_NOTHING || steps == cells) {
+                return;
+            }
+
+            final var move = action.ordinal();
+            final var parent = new Node(row, col, action);
+            row += rowVector[move];
+            col += colVector[move];
+
+            if (!this.env.validPos(row, col)) {
+                return;
+            }
+            this.pathMap.put(new Node(row, col), parent);
+        }
+        this.finishSearch(new Node(row, col));
+    }
+
+    /*
+     * Dijkstra or A* over integer costs, run to the end in one go. The
+     * search itself lives in SearchHandle, which can also run it a few
+     * expansions at a time.
+     */
+    public void integerSearch(boolean informed)
+    {
+        final var status = new SearchHandle(this, informed).run();
+
+        if (status == SearchStatus.CANCELLED || status == SearchStatus.TIMED_OUT) {
+            throw new Stopped(status);
+        }
+    }
+
+    /*
+     * Simplified memory-bounded A* (SMA*). Behaves like A* until
+     * nodeBudget nodes are held, then drops the leaf with the highest f
+     * (shallowest on ties) and backs its f up into its parent, which is
+     * queued again so the dropped subtree can be regenerated once it is
+     * the most promising one left.
+     *
+     * The path found is optimal whenever the budget can hold it; with
+     * less memory the search fails cleanly instead of growing without
+     * bound. A node too deep to reach the goal with the nodes left, even
+     * in a straight line, is cut off, and once every branch from the
+     * root is cut off the search stops. Tiles already generated as
+     * cheaply are not generated again (see Transpositions), which also
+     * rules out cycles and keeps dropped regions from being explored
+     * twice. expansionLimit bounds whatever thrashing is left.
+     */
+    public void SMAStar()
+    {
+        final var budget = Math.max(this.nodeBudget, 2);
+        final var cols = this.getCols();
+
+        // Lowest bound first, deepest first on ties
+        final var open = new TreeSet<BoundedNode>((a, b) -> {
+            var cmp = Long.compare(a.key, b.key);
+            if (cmp == 0) {
+                cmp = Integer.compare(b.depth, a.depth);
+            }
+            return cmp != 0 ? cmp : Long.compare(a.id, b.id);
+        });
+        // Highest f first, shallowest first on ties
+        final var leaves = new TreeSet<BoundedNode>((a, b) -> {
+            var cmp = Long.compare(b.f, a.f);
+            if (cmp == 0) {
+                cmp = Integer.compare(a.depth, b.depth);
+            }
+            return cmp != 0 ? cmp : Long.compare(a.id, b.id);
+        });
+        final var seen = new Transpositions(budget);
+
+        var ids = 0L;
+        var size = 1;
+
+        final var root = new BoundedNode(
+            this.rowPos,
+            this.colPos,
+            -1,
+            0,
+            this.intHeuristic(this.rowPos, this.colPos),
+            null,
+            ids++);
+        root.key = root.f;
+        root.queued = true;
+        open.add(root);
+        leaves.add(root);
+        seen.record(this.rowPos * cols + this.colPos, 0, 0, -1);
+        this.peakNodes = 1;
+
+        BoundedNode goal = null;
+
+        while (!open.isEmpty()) {
+            final var current = open.pollFirst();
+            current.queued = false;
+
+            if (this.isGoal(current.row, current.col)) {
+                goal = current;
+                break;
+            }
+
+            if (this.expansionLimit > 0 && this.expanded >= this.expansionLimit) {
+                break;
+            }
+
+            this.checkpoint();
+            this.expanded++;
+            if (this.trace != null) {
+                this.trace.expand(current.row, current.col);
+            }
+
+            current.expanded = true;
+            current.forgotten = Long.MAX_VALUE;
+
+            for (int i = 0; i < rowVector.length; i++) {
+                final var r = current.row + rowVector[i];
+                final var c = current.col + colVector[i];
+
+                if (!this.env.validPos(r, c) || hasChild(current, r, c)) {
+                    continue;
+                }
+
+                final var g = current.g + this.stepCost(r, c);
+                final var cell = r * cols + c;
+                final var parent = current.row * cols + current.col;
+
+                if (seen.dominated(cell, g, current.depth + 1, parent)) {
+                    continue;
+                }
+
+                // The path to the goal through this child would not fit
+                // in the budget, so it leads nowhere; it is not even held
+                if (current.depth + 1 + this.minSteps(r, c) >= budget) {
+                    continue;
+                }
+
+                final var f = Math.max(current.f, g + this.intHeuristic(r, c));
+
+                if (size >= budget) {
+                    if (!forgetWorstLeaf(current, open, leaves)) {
+                        // Nothing else left to drop; remember the bound
+                        current.forgotten = Math.min(current.forgotten, f);
+                        continue;
+                    }
+                    size--;
+                }
+
+                final var child = new BoundedNode(r, c, i, g, f, current, ids++);
+                leaves.remove(current);
+                current.children.add(child);
+                leaves.add(child);
+                this.peakNodes = Math.max(this.peakNodes, ++size);
+
+                if (this.trace != null) {
+                    this.trace.parent(r, c, mapActionIx(i));
+                }
+
+                seen.record(cell, g, child.depth, parent);
+                child.key = f;
+                child.queued = true;
+                open.add(child);
+            }
+
+            if (current.children.isEmpty()) {
+                leaves.add(current);
+            }
+            // Backed-up bounds only matter once nodes are being dropped;
+            // until then the older, lower ones are still admissible
+            if (size >= budget || current.children.isEmpty()) {
+                backUp(current, leaves);
+            }
+            requeue(current, open);
+
+            // Every branch is cut off: no path fits in the budget
+            if (root.f == Long.MAX_VALUE) {
+                break;
+            }
+        }
+
+        if (goal == null) {
+            return;
+        }
+
+        for (var node = goal; node.parent != null; node = node.parent) {
+            this.pathMap.put(
+                new Node(node.row, node.col),
+                new Node(node.parent.row, node.parent.col, mapActionIx(node.move)));
+        }
+        this.finishSearch(new Node(goal.row, goal.col));
+    }
+
+    private static boolean hasChild(BoundedNode node, int row, int col)
+    {
+        for (final var child : node.children) {
+            if (child.row == row && child.col == col) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Sets node's f to the best of its children and forgotten bound, and
+     * passes any change up. This is not kept monotone: which duplicates
+     * Transpositions prunes changes over time, and a bound raised while
+     * they were pruned must be able to come back down.
+     */
+    private static void backUp(BoundedNode node, TreeSet<BoundedNode> leaves)
+    {
+        for (; node != null && node.expanded; node = node.parent) {
+            var f = node.forgotten;
+            for (final var child : node.children) {
+                f = Math.min(f, child.f);
+            }
+            f = Math.max(f, node.base);
+
+            if (f == node.f) {
+                return;
+            }
+
+            // The leaf order depends on f
+            final var leaf = node.children.isEmpty() && leaves.remove(node);
+            node.f = f;
+            if (leaf) {
+                leaves.add(node);
+            }
+        }
+    }
+
+    /* Queues node again if it has forgotten children to regenerate */
+    private static void requeue(BoundedNode node, TreeSet<BoundedNode> open)
+    {
+        if (node.queued) {
+            open.remove(node);
+            node.queued = false;
+        }
+        if (node.forgotten != Long.MAX_VALUE) {
+            node.key = node.forgotten;
+            node.queued = true;
+            open.add(node);
+        }
+    }
+
+    /*
+     * Drops the worst leaf other than current, folding its f into its
+     * parent's forgotten bound. Returns false if there is none.
+     */
+    private static boolean forgetWorstLeaf(
+        BoundedNode current,
+        TreeSet<BoundedNode> open,
+        TreeSet<BoundedNode> leaves)
+    {
+        BoundedNode worst = null;
+        for (final var leaf : leaves) {
+            if (leaf != current && leaf.parent != null) {
+                worst = leaf;
+                break;
+            }
+        }
+        if (worst == null) {
+            return false;
+        }
+
+        leaves.remove(worst);
+        if (worst.queued) {
+            open.remove(worst);
+            worst.queued = false;
+        }
+        final var parent = worst.parent;
+        parent.children.remove(worst);
+        parent.forgotten = Math.min(parent.forgotten, worst.f);
+
+        if (parent.children.isEmpty()) {
+            leaves.add(parent);
+        }
+        // current is backed up once all its children are generated
+        if (parent != current) {
+            backUp(parent, leaves);
+            requeue(parent, open);
+        }
+        return true;
+    }
+
     public void RBFS()
     {
         final var fMap = new HashMap<Node, Double>();
@@ -379,7 +1205,7 @@ public class PathFinder
             final var f = heuristic(node) + cost;
             fMap.put(node, f);
 
-            pathMap.put(node, new Node(current.x, current.y, node.action));
+            this.setParent(node, current);
 
             if (!openSet.contains(node)) {
                 openSet.add(node);
@@ -435,13 +1261,14 @@ public class PathFinder
             } else {
                 final var node =
                     neighbors.get(random.nextInt(neighbors.size()));
-                pathMap.put(node, new Node(current.x, current.y, node.action));
+                this.setParent(node, current);
                 openSet.add(node);
             }
         }
     }
     
-    public ArrayList<Node> search(String searchAlgorithm)
+    /* Runs the named algorithm; unknown names search nothing */
+    private void run(String searchAlgorithm)
     {
         switch (searchAlgorithm) {
             case "BFS":
@@ -459,13 +1286,72 @@ public class PathFinder
             case "HillClimbing":
                 this.HillClimbing();
                 break;
+            case "IntAStar":
+                this.IntAStar();
+                break;
+            case "IntDijkstra":
+                this.IntDijkstra();
+                break;
+            case "SMAStar":
+                this.SMAStar();
+                break;
+            case "BitBFS":
+                this.BitBFS();
+                break;
+            case "CPD":
+                this.CPD();
+                break;
             default:
                 break;
         }
+    }
+
+    public ArrayList<Node> search(String searchAlgorithm)
+    {
+        final var event = new SearchEvent();
+        event.begin();
+
+        // Walled-off targets are rejected before anything is expanded
+        final var unreachable = this.endNode != null && !this.goalReachable();
+
+        this.status = SearchStatus.RUNNING;
+
+        try {
+            this.run(unreachable ? "" : searchAlgorithm);
+        } catch (Stopped e) {
+            this.status = e.reason;
+            this.reachedTarget = false;
+        }
+        if (this.status == SearchStatus.RUNNING) {
+            this.status = this.reachedTarget ? SearchStatus.FOUND : SearchStatus.FAILED;
+        }
+
+        if (this.trace != null) {
+            final var last = this.reachedTarget ? this.endNode : this.startNode;
+            this.trace.finish(this.reachedTarget, last.x, last.y);
+        }
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.algorithm = searchAlgorithm;
+            event.rows = this.getRows();
+            event.cols = this.getCols();
+            event.startRow = this.rowPos;
+            event.startCol = this.colPos;
+            if (this.endNode != null) {
+                event.targetRow = this.endNode.x;
+                event.targetCol = this.endNode.y;
+            }
+            event.expanded = this.expanded;
+            event.reachedTarget = this.reachedTarget;
+            event.commit();
+        }
 
         if (this.reachedTarget) {
             this.getPath();
-            this.printPath();
+            if (!this.quiet) {
+                this.printPath();
+            }
             return this.path;
         } else {
             return null;
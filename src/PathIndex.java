@@ -0,0 +1,78 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Spatial index from tiles to the robots whose remaining plan crosses
+ * them. When a tile changes, only the robots listed under it need to
+ * replan; everyone else's plan is unaffected.
+ */
+public class PathIndex
+{
+    private final int cols;
+
+    private final Map<Integer, List<Robot>> robotsByCell;
+    private final Map<Robot, int[]> cellsByRobot;
+
+    public PathIndex(Environment env)
+    {
+        this.cols = env.getCols();
+        this.robotsByCell = new HashMap<Integer, List<Robot>>();
+        this.cellsByRobot = new HashMap<Robot, int[]>();
+    }
+
+    /* Indexes the robot under every tile left on its plan */
+    public void add(Robot robot)
+    {
+        this.remove(robot);
+
+        final var remaining = robot.getRemainingPath();
+        final var cells = new int[remaining.size()];
+
+        for (int i = 0; i < cells.length; i++) {
+            final var node = remaining.get(i);
+            cells[i] = node.x * this.cols + node.y;
+
+            this.robotsByCell
+                .computeIfAbsent(cells[i], (cell) -> new ArrayList<Robot>(2))
+                .add(robot);
+        }
+        this.cellsByRobot.put(robot, cells);
+    }
+
+    public void remove(Robot robot)
+    {
+        final var cells = this.cellsByRobot.remove(robot);
+
+        if (cells == null) {
+            return;
+        }
+
+        for (final var cell : cells) {
+            final var robots = this.robotsByCell.get(cell);
+
+            if (robots != null) {
+                robots.remove(robot);
+                if (robots.isEmpty()) {
+                    this.robotsByCell.remove(cell);
+                }
+            }
+        }
+    }
+
+    /*
+     * Robots whose plan crossed [row][col] when it was indexed. A robot
+     * may already have walked past the tile; Robot.crossesAhead tells.
+     */
+    public List<Robot> robotsCrossing(int row, int col)
+    {
+        final var robots = this.robotsByCell.get(row * this.cols + col);
+
+        if (robots == null) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<Robot>(robots);
+    }
+}
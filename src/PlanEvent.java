@@ -0,0 +1,26 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event covering one Robot.plan call.
+ */
+@Name("csc411.Plan")
+@Label("Robot Plan")
+@Category({"CSC411", "Planning"})
+@Description("A robot computing its plan before it starts moving")
+public class PlanEvent extends jdk.jfr.Event
+{
+    @Label("Robot") public int robot;
+    @Label("Algorithm") public String algorithm;
+
+    @Label("Rows") public int rows;
+    @Label("Columns") public int cols;
+
+    @Label("Start Row") public int startRow;
+    @Label("Start Column") public int startCol;
+
+    @Label("Expanded Nodes") public int expanded;
+    @Label("Path Length") public int pathLength;
+}
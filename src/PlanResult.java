@@ -0,0 +1,164 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The immutable outcome of one Planner query: whether the goal was
+ * reached, the moves and tiles along the path, its cost under the
+ * simulation's cost model, and how many nodes the search expanded.
+ * Safe to share between threads once returned.
+ */
+public final class PlanResult
+{
+    private final String algorithm;
+    private final SearchStatus status;
+    private final boolean reached;
+    private final int expanded;
+    private final long cost;
+
+    // Tiles along the path, start first, and the move into each tile
+    // after the start as an Action ordinal
+    private final int[] rows, cols;
+    private final byte[] actions;
+
+    private PlanResult(
+        String algorithm,
+        SearchStatus status,
+        boolean reached,
+        int expanded,
+        long cost,
+        int[] rows,
+        int[] cols,
+        byte[] actions)
+    {
+        this.algorithm = algorithm;
+        this.status = status;
+        this.reached = reached;
+        this.expanded = expanded;
+        this.cost = cost;
+        this.rows = rows;
+        this.cols = cols;
+        this.actions = actions;
+    }
+
+    public static PlanResult noPath(String algorithm, int expanded)
+    {
+        return noPath(algorithm, expanded, SearchStatus.FAILED);
+    }
+
+    /* No path because the search failed, or was stopped as status says */
+    public static PlanResult noPath(String algorithm, int expanded, SearchStatus status)
+    {
+        return new PlanResult(
+            algorithm, status, false, expanded, -1, new int[0], new int[0], new byte[0]);
+    }
+
+    /* Copies path, as returned by finder.search, out of the finder */
+    public static PlanResult of(
+        String algorithm,
+        PathFinder finder,
+        List<PathFinder.Node> path)
+    {
+        if (path == null) {
+            final var status = finder.status;
+            return noPath(
+                algorithm,
+                finder.expanded,
+                status != null && status.isDone() ? status : SearchStatus.FAILED);
+        }
+
+        final var rows = new int[path.size()];
+        final var cols = new int[path.size()];
+        final var actions = new byte[Math.max(path.size() - 1, 0)];
+        long cost = 0;
+
+        for (int i = 0; i < path.size(); i++) {
+            final var node = path.get(i);
+            rows[i] = node.x;
+            cols[i] = node.y;
+
+            if (i > 0) {
+                // Each node carries the move out of it
+                actions[i - 1] = (byte) path.get(i - 1).action.ordinal();
+                cost += finder.stepCost(node.x, node.y);
+            }
+        }
+        return new PlanResult(
+            algorithm, SearchStatus.FOUND, true, finder.expanded, cost, rows, cols, actions);
+    }
+
+    public String getAlgorithm()
+    {
+        return this.algorithm;
+    }
+
+    /* FOUND, FAILED, or CANCELLED / TIMED_OUT if the search was stopped */
+    public SearchStatus getStatus()
+    {
+        return this.status;
+    }
+
+    public boolean isReached()
+    {
+        return this.reached;
+    }
+
+    public int getExpanded()
+    {
+        return this.expanded;
+    }
+
+    /* Sum of step costs along the path, -1 without one */
+    public long getCost()
+    {
+        return this.cost;
+    }
+
+    /* Number of tiles on the path, start and goal included */
+    public int getLength()
+    {
+        return this.rows.length;
+    }
+
+    public int getRow(int i)
+    {
+        return this.rows[i];
+    }
+
+    public int getCol(int i)
+    {
+        return this.cols[i];
+    }
+
+    public Action getAction(int i)
+    {
+        return Action.values()[this.actions[i]];
+    }
+
+    public List<Action> getActions()
+    {
+        final var actions = new ArrayList<Action>(this.actions.length);
+        for (final var action : this.actions) {
+            actions.add(Action.values()[action]);
+        }
+        return Collections.unmodifiableList(actions);
+    }
+
+    /* The moves as Action ordinals, one byte each */
+    public byte[] getActionOrdinals()
+    {
+        return Arrays.copyOf(this.actions, this.actions.length);
+    }
+
+    public String toString()
+    {
+        return String.format(
+            "%s: reached=%s length=%d cost=%d expanded=%d",
+            this.algorithm,
+            this.reached,
+            this.getLength(),
+            this.cost,
+            this.expanded);
+    }
+}
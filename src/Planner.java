@@ -0,0 +1,141 @@
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A reentrant planning facade over one Environment. Any number of
+ * threads may call plan() at once: each query borrows a PathFinder from
+ * a lock-free pool, so the visited grid and parent map are reused
+ * instead of reallocated, and gets back an immutable PlanResult. No
+ * locks are held while searching.
+ *
+ * The pool grows to the largest number of concurrent queries seen and
+ * no further. The Environment must not be modified while queries run.
+ */
+public class Planner
+{
+    private final Environment env;
+    private final LandmarkHeuristic landmarks;
+
+    private final ConcurrentLinkedQueue<PathFinder> idle;
+    private final AtomicInteger created;
+
+    public Planner(Environment env)
+    {
+        this(env, null);
+    }
+
+    public Planner(Environment env, LandmarkHeuristic landmarks)
+    {
+        this.env = env;
+        this.landmarks = landmarks;
+        this.idle = new ConcurrentLinkedQueue<PathFinder>();
+        this.created = new AtomicInteger();
+
+        // Built once here rather than by the first query of every thread,
+        // unless the environment is paged and a build would read it all
+        env.peekComponents();
+    }
+
+    public Environment getEnvironment()
+    {
+        return this.env;
+    }
+
+    public LandmarkHeuristic getLandmarks()
+    {
+        return this.landmarks;
+    }
+
+    /* Number of PathFinders the pool has had to create */
+    public int getCreated()
+    {
+        return this.created.get();
+    }
+
+    private PathFinder acquire(int startRow, int startCol, int goalRow, int goalCol)
+    {
+        final var finder = this.idle.poll();
+
+        if (finder != null) {
+            finder.prepare(startRow, startCol, goalRow, goalCol);
+            return finder;
+        }
+
+        this.created.incrementAndGet();
+        final var fresh = new PathFinder(this.env, startRow, startCol, goalRow, goalCol);
+        fresh.quiet = true;
+        fresh.landmarks = this.landmarks;
+        return fresh;
+    }
+
+    /*
+     * Plans from [startRow][startCol] to [goalRow][goalCol] with one of
+     * PathFinder.ALGORITHMS. A query that fails outright (a bad position,
+     * RBFS running out of stack) comes back as having no path.
+     */
+    public PlanResult plan(
+        String algorithm,
+        int startRow,
+        int startCol,
+        int goalRow,
+        int goalCol)
+    {
+        return this.plan(algorithm, startRow, startCol, goalRow, goalCol, false, 0);
+    }
+
+    /*
+     * Like plan, but gives up once System.nanoTime() passes deadline; the
+     * result's status is then TIMED_OUT and the thread is free again.
+     */
+    public PlanResult planBefore(
+        String algorithm,
+        int startRow,
+        int startCol,
+        int goalRow,
+        int goalCol,
+        long deadline)
+    {
+        return this.plan(algorithm, startRow, startCol, goalRow, goalCol, true, deadline);
+    }
+
+    private PlanResult plan(
+        String algorithm,
+        int startRow,
+        int startCol,
+        int goalRow,
+        int goalCol,
+        boolean timed,
+        long deadline)
+    {
+        final var finder = this.acquire(startRow, startCol, goalRow, goalCol);
+        if (timed) {
+            finder.setDeadline(deadline);
+        }
+
+        try {
+            return PlanResult.of(algorithm, finder, finder.search(algorithm));
+        } catch (RuntimeException | StackOverflowError e) {
+            return PlanResult.noPath(algorithm, finder.expanded);
+        } finally {
+            this.idle.offer(finder);
+        }
+    }
+
+    /*
+     * Starts a step-wise IntAStar or IntDijkstra query (see SearchHandle).
+     * The handle keeps its own PathFinder for as long as it lives, so it
+     * does not come from the pool.
+     */
+    public SearchHandle start(
+        String algorithm,
+        int startRow,
+        int startCol,
+        int goalRow,
+        int goalCol)
+    {
+        final var finder = new PathFinder(this.env, startRow, startCol, goalRow, goalCol);
+        finder.quiet = true;
+        finder.landmarks = this.landmarks;
+        return new SearchHandle(finder, algorithm);
+    }
+}
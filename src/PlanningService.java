@@ -0,0 +1,588 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A long-running planner listening on a loopback socket. Environments
+ * are registered once and stay warm together with their component index,
+ * optional landmark table and a Planner's pool of reusable PathFinders,
+ * so a query pays for the search only.
+ *
+ * PLAN requests from all connections are checked as they are read and
+ * go straight into the bounded work queue of a fixed worker pool, so an
+ * idle worker takes the next query at once, a burst keeps all of them
+ * busy and a slow query holds up no other. A request that finds the
+ * queue full is answered with STATUS_BUSY rather than queued without
+ * bound; the queue and the queries being worked on show up in STATS.
+ *
+ * Protocol (big-endian, requests may be pipelined; replies carry the
+ * request id and can come back out of order):
+ *
+ *   PLAN   request: byte 1, int id, byte algorithm (index into
+ *                   PathFinder.ALGORITHMS), int env, int startRow,
+ *                   int startCol, int goalRow, int goalCol
+ *          reply:   int id, byte status, int expanded, int length,
+ *                   length bytes of Action ordinals
+ *   STATS  request: byte 2, int id
+ *          reply:   int id, byte status, UTF string
+ *
+ * A PLAN for an unknown algorithm or environment, or with a start or
+ * goal off the map, is answered with STATUS_BAD_REQUEST.
+ *
+ * A PLAN query still unanswered DEFAULT_REQUEST_TIMEOUT_MILLIS after it
+ * was received (see setRequestTimeout) is stopped and answered with
+ * STATUS_TIMED_OUT, so one pathological query cannot hold a worker
+ * indefinitely.
+ */
+public class PlanningService implements Closeable
+{
+    public static final byte OP_PLAN = 1;
+    public static final byte OP_STATS = 2;
+
+    public static final byte STATUS_OK = 0;
+    public static final byte STATUS_NO_PATH = 1;
+    public static final byte STATUS_BAD_REQUEST = 2;
+    public static final byte STATUS_TIMED_OUT = 3;
+    public static final byte STATUS_BUSY = 4;
+
+    public static final long DEFAULT_REQUEST_TIMEOUT_MILLIS = 10000;
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    private static final int LATENCY_SAMPLES = 1 << 14;
+
+    private static class Request
+    {
+        public final Connection connection;
+        public final int id, envId;
+        public final String algorithm;
+        public final int startRow, startCol, goalRow, goalCol;
+        public final long enqueued;
+
+        public Request(
+            Connection connection,
+            int id,
+            String algorithm,
+            int envId,
+            int startRow,
+            int startCol,
+            int goalRow,
+            int goalCol)
+        {
+            this.connection = connection;
+            this.id = id;
+            this.algorithm = algorithm;
+            this.envId = envId;
+            this.startRow = startRow;
+            this.startCol = startCol;
+            this.goalRow = goalRow;
+            this.goalCol = goalCol;
+            this.enqueued = System.nanoTime();
+        }
+    }
+
+    private class Connection implements Runnable
+    {
+        private final Socket socket;
+        private final DataOutputStream out;
+
+        public Connection(Socket socket) throws IOException
+        {
+            this.socket = socket;
+            this.socket.setTcpNoDelay(true);
+            this.out = new DataOutputStream(
+                new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        public void run()
+        {
+            try (final var in = new DataInputStream(
+                     new BufferedInputStream(this.socket.getInputStream()))) {
+                while (true) {
+                    final var op = in.readByte();
+                    final var id = in.readInt();
+
+                    if (op == OP_STATS) {
+                        this.replyStats(id);
+                        continue;
+                    }
+                    if (op != OP_PLAN) {
+                        this.replyStatus(id, STATUS_BAD_REQUEST);
+                        continue;
+                    }
+
+                    final var algorithm = in.readByte();
+                    final var envId = in.readInt();
+                    final var startRow = in.readInt();
+                    final var startCol = in.readInt();
+                    final var goalRow = in.readInt();
+                    final var goalCol = in.readInt();
+
+                    final var planner = planners.get(envId);
+
+                    if (algorithm < 0 || algorithm >= PathFinder.ALGORITHMS.length
+                        || planner == null
+                        || !onMap(planner.getEnvironment(), startRow, startCol)
+                        || !onMap(planner.getEnvironment(), goalRow, goalCol)) {
+                        this.replyStatus(id, STATUS_BAD_REQUEST);
+                        continue;
+                    }
+
+                    submit(new Request(
+                        this,
+                        id,
+                        PathFinder.ALGORITHMS[algorithm],
+                        envId,
+                        startRow,
+                        startCol,
+                        goalRow,
+                        goalCol));
+                }
+            } catch (EOFException e) {
+                // Client hung up
+            } catch (IOException e) {
+                if (!closed) {
+                    System.err.println("PlanningService connection: " + e);
+                }
+            } finally {
+                try {
+                    this.socket.close();
+                } catch (IOException e) {
+                    // Already torn down
+                }
+            }
+        }
+
+        public synchronized void replyStatus(int id, byte status) throws IOException
+        {
+            this.out.writeInt(id);
+            this.out.writeByte(status);
+            this.out.writeInt(0);
+            this.out.writeInt(0);
+            this.out.flush();
+        }
+
+        public synchronized void replyStats(int id) throws IOException
+        {
+            this.out.writeInt(id);
+            this.out.writeByte(STATUS_OK);
+            this.out.writeUTF(getStats());
+            this.out.flush();
+        }
+
+        public synchronized void replyPlan(int id, byte status, int expanded, byte[] actions)
+            throws IOException
+        {
+            this.out.writeInt(id);
+            this.out.writeByte(status);
+            this.out.writeInt(expanded);
+            this.out.writeInt(actions != null ? actions.length : 0);
+            if (actions != null) {
+                this.out.write(actions);
+            }
+            this.out.flush();
+        }
+    }
+
+    private final Map<Integer, Planner> planners;
+
+    private final ServerSocket server;
+    private final ThreadPoolExecutor workers;
+    private final Thread acceptor;
+
+    private final AtomicLong served, timedOut, rejected;
+    private final AtomicInteger inFlight, maxQueueDepth;
+    private final long[] latencies;
+    private long latencyCount;
+
+    // Longest a PLAN query may take from receipt, 0 for no limit
+    private volatile long timeoutNanos;
+
+    private volatile boolean closed;
+
+    /* At most queueCapacity PLAN queries wait for one of the workers */
+    public PlanningService(int port, int workerThreads, int queueCapacity)
+        throws IOException
+    {
+        this.planners = new ConcurrentHashMap<Integer, Planner>();
+
+        this.server = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+        this.workers = new ThreadPoolExecutor(
+            workerThreads,
+            workerThreads,
+            0,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(queueCapacity));
+
+        this.served = new AtomicLong();
+        this.timedOut = new AtomicLong();
+        this.rejected = new AtomicLong();
+        this.inFlight = new AtomicInteger();
+        this.maxQueueDepth = new AtomicInteger();
+        this.latencies = new long[LATENCY_SAMPLES];
+        this.latencyCount = 0;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_REQUEST_TIMEOUT_MILLIS);
+        this.closed = false;
+
+        this.acceptor = new Thread(this::acceptLoop, "planning-acceptor");
+    }
+
+    /*
+     * Registers an environment under id and warms its indices. The
+     * environment must not be modified while the service is running.
+     */
+    public void register(int id, Environment env, LandmarkHeuristic landmarks)
+    {
+        this.planners.put(id, new Planner(env, landmarks));
+    }
+
+    /* Stops PLAN queries timeoutMillis after receipt; 0 lifts the limit */
+    public void setRequestTimeout(long timeoutMillis)
+    {
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, timeoutMillis));
+    }
+
+    public int getPort()
+    {
+        return this.server.getLocalPort();
+    }
+
+    public void start()
+    {
+        this.acceptor.setDaemon(true);
+        this.acceptor.start();
+    }
+
+    private void acceptLoop()
+    {
+        while (!this.closed) {
+            try {
+                final var socket = this.server.accept();
+                final var thread =
+                    new Thread(new Connection(socket), "planning-connection");
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                if (!this.closed) {
+                    System.err.println("PlanningService accept: " + e);
+                }
+            }
+        }
+    }
+
+    private static boolean onMap(Environment env, int row, int col)
+    {
+        return row >= 0 && row < env.getRows() && col >= 0 && col < env.getCols();
+    }
+
+    /* Queues request for the workers, or turns it away if the queue is full */
+    private void submit(Request request) throws IOException
+    {
+        try {
+            this.workers.execute(() -> this.process(request));
+        } catch (RejectedExecutionException e) {
+            this.rejected.incrementAndGet();
+            request.connection.replyStatus(request.id, STATUS_BUSY);
+            return;
+        }
+        this.maxQueueDepth.accumulateAndGet(this.getQueueDepth(), Math::max);
+    }
+
+    private void process(Request request)
+    {
+        final var timeout = this.timeoutNanos;
+        final var planner = this.planners.get(request.envId);
+
+        final PlanResult result;
+        this.inFlight.incrementAndGet();
+        try {
+            result = timeout > 0
+                ? planner.planBefore(
+                    request.algorithm,
+                    request.startRow,
+                    request.startCol,
+                    request.goalRow,
+                    request.goalCol,
+                    request.enqueued + timeout)
+                : planner.plan(
+                    request.algorithm,
+                    request.startRow,
+                    request.startCol,
+                    request.goalRow,
+                    request.goalCol);
+        } finally {
+            this.inFlight.decrementAndGet();
+        }
+
+        this.recordLatency(System.nanoTime() - request.enqueued);
+        this.served.incrementAndGet();
+
+        final byte status;
+        if (result.isReached()) {
+            status = STATUS_OK;
+        } else if (result.getStatus() == SearchStatus.TIMED_OUT) {
+            this.timedOut.incrementAndGet();
+            status = STATUS_TIMED_OUT;
+        } else {
+            status = STATUS_NO_PATH;
+        }
+
+        try {
+            request.connection.replyPlan(
+                request.id,
+                status,
+                result.getExpanded(),
+                result.isReached() ? result.getActionOrdinals() : null);
+        } catch (IOException e) {
+            // The client is gone; nothing left to do for this request
+        }
+    }
+
+    private synchronized void recordLatency(long nanos)
+    {
+        this.latencies[(int) (this.latencyCount++ % LATENCY_SAMPLES)] = nanos;
+    }
+
+    /* Request latency (enqueue to reply) over the most recent requests */
+    public synchronized long[] getRecentLatencies()
+    {
+        final var n = (int) Math.min(this.latencyCount, LATENCY_SAMPLES);
+        return Arrays.copyOf(this.latencies, n);
+    }
+
+    /* PLAN queries waiting for a worker */
+    public int getQueueDepth()
+    {
+        return this.workers.getQueue().size();
+    }
+
+    /* PLAN queries a worker is searching for right now */
+    public int getInFlight()
+    {
+        return this.inFlight.get();
+    }
+
+    public String getStats()
+    {
+        final var recent = this.getRecentLatencies();
+        Arrays.sort(recent);
+
+        return String.format(
+            "served=%d timed_out=%d rejected=%d queue=%d in_flight=%d max_queue=%d "
+                + "p50_us=%.1f p99_us=%.1f max_us=%.1f",
+            this.served.get(),
+            this.timedOut.get(),
+            this.rejected.get(),
+            this.getQueueDepth(),
+            this.getInFlight(),
+            this.maxQueueDepth.get(),
+            percentile(recent, 50) / 1e3,
+            percentile(recent, 99) / 1e3,
+            recent.length == 0 ? 0.0 : recent[recent.length - 1] / 1e3);
+    }
+
+    private static double percentile(long[] sorted, double p)
+    {
+        if (sorted.length == 0) {
+            return 0.0;
+        }
+        final var rank = (int) Math.ceil(p / 100.0 * sorted.length);
+        return sorted[Math.min(Math.max(rank, 1), sorted.length) - 1];
+    }
+
+    public void close() throws IOException
+    {
+        this.closed = true;
+        this.server.close();
+        this.workers.shutdown();
+    }
+
+    /**
+     * Blocking client for one connection, one request at a time.
+     */
+    public static class Client implements Closeable
+    {
+        public static class Reply
+        {
+            public final byte status;
+            public final int expanded;
+            public final List<Action> actions;
+
+            public Reply(byte status, int expanded, List<Action> actions)
+            {
+                this.status = status;
+                this.expanded = expanded;
+                this.actions = Collections.unmodifiableList(actions);
+            }
+        }
+
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+        private int nextId;
+
+        public Client(int port) throws IOException
+        {
+            this.socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            this.socket.setTcpNoDelay(true);
+            this.in = new DataInputStream(
+                new BufferedInputStream(this.socket.getInputStream()));
+            this.out = new DataOutputStream(
+                new BufferedOutputStream(this.socket.getOutputStream()));
+            this.nextId = 0;
+        }
+
+        public Reply plan(
+            String algorithm,
+            int envId,
+            int startRow,
+            int startCol,
+            int goalRow,
+            int goalCol) throws IOException
+        {
+            final var id = this.nextId++;
+
+            this.out.writeByte(OP_PLAN);
+            this.out.writeInt(id);
+            this.out.writeByte(Arrays.asList(PathFinder.ALGORITHMS).indexOf(algorithm));
+            this.out.writeInt(envId);
+            this.out.writeInt(startRow);
+            this.out.writeInt(startCol);
+            this.out.writeInt(goalRow);
+            this.out.writeInt(goalCol);
+            this.out.flush();
+
+            if (this.in.readInt() != id) {
+                throw new IOException("Out of order reply");
+            }
+            final var status = this.in.readByte();
+            final var expanded = this.in.readInt();
+            final var actions = new ArrayList<Action>();
+
+            for (int i = this.in.readInt(); i > 0; i--) {
+                actions.add(Action.values()[this.in.readByte()]);
+            }
+            return new Reply(status, expanded, actions);
+        }
+
+        public String stats() throws IOException
+        {
+            final var id = this.nextId++;
+
+            this.out.writeByte(OP_STATS);
+            this.out.writeInt(id);
+            this.out.flush();
+
+            if (this.in.readInt() != id) {
+                throw new IOException("Out of order reply");
+            }
+            this.in.readByte();
+            return this.in.readUTF();
+        }
+
+        public void close() throws IOException
+        {
+            this.socket.close();
+        }
+    }
+
+    /*
+     * java PlanningService [-p port] [-t threads] [-q queueCapacity]
+     *                      [-l landmarks] [-d timeoutMillis] [map files...]
+     *
+     * The built-in environments "1" and "2" are registered as ids 1 and
+     * 2; map files follow as ids 3, 4, ... Files ending in .snap are
+     * opened as EnvironmentSnapshots and used with their stored indices.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        int port = 7411, threads = Runtime.getRuntime().availableProcessors();
+        int capacity = DEFAULT_QUEUE_CAPACITY, landmarkCount = 0;
+        long timeout = DEFAULT_REQUEST_TIMEOUT_MILLIS;
+
+        final var maps = new ArrayList<String>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-p":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "-t":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "-q":
+                    capacity = Integer.parseInt(args[++i]);
+                    break;
+                case "-l":
+                    landmarkCount = Integer.parseInt(args[++i]);
+                    break;
+                case "-d":
+                    timeout = Long.parseLong(args[++i]);
+                    break;
+                default:
+                    maps.add(args[i]);
+                    break;
+            }
+        }
+
+        final var service = new PlanningService(port, threads, capacity);
+        service.setRequestTimeout(timeout);
+
+        final var envs = new ArrayList<Environment>();
+        envs.add(new Environment("1"));
+        envs.add(new Environment("2"));
+
+        for (final var map : maps) {
+            if (map.endsWith(".snap")) {
+                // Snapshots come with their indices already built
+                final var snapshot = EnvironmentSnapshot.open(Paths.get(map));
+                service.register(
+                    envs.size() + 1, snapshot.getEnvironment(), snapshot.getLandmarks());
+                envs.add(snapshot.getEnvironment());
+                continue;
+            }
+            envs.add(MapLoader.load(Paths.get(map)));
+        }
+
+        for (int i = 0; i < envs.size(); i++) {
+            final var env = envs.get(i);
+            if (env instanceof MappedEnvironment) {
+                continue;
+            }
+            service.register(
+                i + 1,
+                env,
+                landmarkCount > 0 ? LandmarkHeuristic.build(env, landmarkCount) : null);
+        }
+
+        service.start();
+        System.out.printf(
+            "Planning service on %s:%d with %d environments%n",
+            InetAddress.getLoopbackAddress().getHostAddress(),
+            service.getPort(),
+            envs.size());
+
+        Runtime.getRuntime().addShutdownHook(
+            new Thread(() -> System.out.println(service.getStats())));
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,123 @@
+import java.util.Arrays;
+
+/**
+ * A monotone priority queue of int values keyed by non-negative long
+ * priorities. Every key pushed must be at least the last key popped,
+ * which holds for Dijkstra and for A* with a consistent heuristic.
+ *
+ * Items live in 65 buckets by the highest bit in which their key
+ * differs from the last key popped. Popping refills bucket 0 from the
+ * lowest non-empty bucket, and an item can only move to lower buckets,
+ * so each item is touched O(log C) times for a largest edge weight C,
+ * with no comparisons between items and no boxing.
+ */
+public class RadixHeap
+{
+    private static final int BUCKETS = 65;
+
+    private final long[][] keys;
+    private final int[][] values;
+    private final int[] sizes;
+
+    private long last;
+    private int size;
+
+    public RadixHeap()
+    {
+        this.keys = new long[BUCKETS][];
+        this.values = new int[BUCKETS][];
+        this.sizes = new int[BUCKETS];
+
+        for (int i = 0; i < BUCKETS; i++) {
+            this.keys[i] = new long[16];
+            this.values[i] = new int[16];
+        }
+        this.clear();
+    }
+
+    private int bucket(long key)
+    {
+        return key == this.last ? 0 : 64 - Long.numberOfLeadingZeros(key ^ this.last);
+    }
+
+    private void add(int bucket, long key, int value)
+    {
+        var n = this.sizes[bucket];
+
+        if (n == this.keys[bucket].length) {
+            this.keys[bucket] = Arrays.copyOf(this.keys[bucket], n * 2);
+            this.values[bucket] = Arrays.copyOf(this.values[bucket], n * 2);
+        }
+        this.keys[bucket][n] = key;
+        this.values[bucket][n] = value;
+        this.sizes[bucket] = n + 1;
+    }
+
+    public void push(long key, int value)
+    {
+        if (key < this.last) {
+            throw new IllegalArgumentException(String.format(
+                "Key %d is below the last popped key %d", key, this.last));
+        }
+        this.add(this.bucket(key), key, value);
+        this.size++;
+    }
+
+    /* Removes and returns a value with the smallest key; see lastKey() */
+    public int pop()
+    {
+        if (this.size == 0) {
+            throw new IllegalStateException("RadixHeap is empty");
+        }
+
+        if (this.sizes[0] == 0) {
+            var i = 1;
+            while (this.sizes[i] == 0) {
+                i++;
+            }
+
+            final var bucketKeys = this.keys[i];
+            final var bucketValues = this.values[i];
+            final var n = this.sizes[i];
+
+            var min = bucketKeys[0];
+            for (int j = 1; j < n; j++) {
+                min = Math.min(min, bucketKeys[j]);
+            }
+
+            // Everything in bucket i now agrees with the new minimum on a
+            // higher bit, so it all lands in lower buckets
+            this.last = min;
+            this.sizes[i] = 0;
+            for (int j = 0; j < n; j++) {
+                this.add(this.bucket(bucketKeys[j]), bucketKeys[j], bucketValues[j]);
+            }
+        }
+
+        this.size--;
+        return this.values[0][--this.sizes[0]];
+    }
+
+    /* Key of the value returned by the most recent pop() */
+    public long lastKey()
+    {
+        return this.last;
+    }
+
+    public boolean isEmpty()
+    {
+        return this.size == 0;
+    }
+
+    public int size()
+    {
+        return this.size;
+    }
+
+    public void clear()
+    {
+        Arrays.fill(this.sizes, 0);
+        this.last = 0;
+        this.size = 0;
+    }
+}
@@ -0,0 +1,318 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Real-time adaptive A* (RTAA*) towards one target. Each call to step()
+ * runs an A* from the agent's tile that stops after at most lookahead
+ * expansions, raises the heuristic of every tile it expanded to
+ * f(best) - g(tile), where best is the most promising tile left open,
+ * and returns the first move towards best. Per-action work is bounded by
+ * the lookahead no matter how large the map is, and repeated visits keep
+ * tightening the heuristic until the agent walks shortest paths. With a
+ * lookahead of one this is LRTA*.
+ *
+ * Learned values live in one int per tile, so they can be saved and
+ * loaded for later runs on the same terrain and target (see save, load).
+ * They stay admissible as long as no step gets cheaper; tiles becoming
+ * more expensive or impassable only make them looser.
+ */
+public class RealTimeSearch
+{
+    private static final int MAGIC = 0x52544148; // "RTAH"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+
+    private static final int UNLEARNED = -1;
+
+    private final Environment env;
+    private final int rows, cols;
+    private final int targetRow, targetCol;
+    private final long fingerprint;
+    private final int lookahead;
+
+    // Learned heuristic per tile, UNLEARNED where only the base bound is known
+    private final int[] learned;
+
+    // Scratch for the local searches; a tile's entries are only valid
+    // where seen (or closed) holds the current search's number
+    private final long[] g;
+    private final byte[] parentMove;
+    private final int[] seen, closed;
+    private final int[] closedCells;
+    private final RadixHeap open;
+    private int search;
+
+    // Optional ALT lower bounds for tiles not learned yet
+    public LandmarkHeuristic landmarks;
+
+    // Expansions over all steps
+    public long expanded;
+
+    public RealTimeSearch(Environment env, int targetRow, int targetCol, int lookahead)
+    {
+        this(env, targetRow, targetCol, lookahead, null);
+    }
+
+    private RealTimeSearch(
+        Environment env,
+        int targetRow,
+        int targetCol,
+        int lookahead,
+        int[] learned)
+    {
+        if (lookahead < 1) {
+            throw new IllegalArgumentException("Lookahead must be at least 1: " + lookahead);
+        }
+
+        this.env = env;
+        this.rows = env.getRows();
+        this.cols = env.getCols();
+        this.targetRow = targetRow;
+        this.targetCol = targetCol;
+        this.fingerprint = env.fingerprint();
+        this.lookahead = lookahead;
+
+        final var cells = this.rows * this.cols;
+
+        if (learned == null) {
+            learned = new int[cells];
+            Arrays.fill(learned, UNLEARNED);
+        }
+        this.learned = learned;
+
+        this.g = new long[cells];
+        this.parentMove = new byte[cells];
+        this.seen = new int[cells];
+        this.closed = new int[cells];
+        this.closedCells = new int[lookahead];
+        this.open = new RadixHeap();
+        this.search = 0;
+    }
+
+    public int getTargetRow()
+    {
+        return this.targetRow;
+    }
+
+    public int getTargetCol()
+    {
+        return this.targetCol;
+    }
+
+    public int getLookahead()
+    {
+        return this.lookahead;
+    }
+
+    /* Current heuristic of [row][col]: learned, else the base bound */
+    public long heuristic(int row, int col)
+    {
+        final var value = this.learned[row * this.cols + col];
+
+        if (value != UNLEARNED) {
+            return value;
+        }
+
+        final long distance =
+            Math.abs(row - this.targetRow) + Math.abs(col - this.targetCol);
+
+        if (this.landmarks == null) {
+            return distance;
+        }
+        return Math.max(
+            distance,
+            this.landmarks.lowerBound(row, col, this.targetRow, this.targetCol));
+    }
+
+    /* Number of tiles with a learned heuristic value */
+    public int getLearnedCount()
+    {
+        var count = 0;
+        for (final var value : this.learned) {
+            if (value != UNLEARNED) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /* Forgets everything learned, e.g. after steps became cheaper */
+    public void clearLearned()
+    {
+        Arrays.fill(this.learned, UNLEARNED);
+    }
+
+    /*
+     * The move to make from [row][col]. DO_NOTHING once on the target, or
+     * if the target cannot be reached from here at all.
+     */
+    public Action step(int row, int col)
+    {
+        if (row == this.targetRow && col == this.targetCol) {
+            return Action.DO_NOTHING;
+        }
+
+        // Stamps restart rather than wrap into stale entries
+        if (++this.search == Integer.MAX_VALUE) {
+            Arrays.fill(this.seen, 0);
+            Arrays.fill(this.closed, 0);
+            this.search = 1;
+        }
+
+        final var start = row * this.cols + col;
+        this.g[start] = 0;
+        this.parentMove[start] = -1;
+        this.seen[start] = this.search;
+        this.open.clear();
+        this.open.push(this.heuristic(row, col), start);
+
+        var best = -1;
+        var count = 0;
+
+        while (!this.open.isEmpty()) {
+            final var cell = this.open.pop();
+            if (this.closed[cell] == this.search) {
+                continue;
+            }
+
+            final var r = cell / this.cols;
+            final var c = cell % this.cols;
+
+            if ((r == this.targetRow && c == this.targetCol) || count == this.lookahead) {
+                best = cell;
+                break;
+            }
+
+            this.closed[cell] = this.search;
+            this.closedCells[count++] = cell;
+
+            for (int i = 0; i < PathFinder.rowVector.length; i++) {
+                final var nr = r + PathFinder.rowVector[i];
+                final var nc = c + PathFinder.colVector[i];
+
+                if (!this.env.validPos(nr, nc)) {
+                    continue;
+                }
+
+                final var next = nr * this.cols + nc;
+                if (this.closed[next] == this.search) {
+                    continue;
+                }
+
+                final var tentative = this.g[cell] + this.env.getTileCost(nr, nc) + 1;
+                if (this.seen[next] != this.search || tentative < this.g[next]) {
+                    this.seen[next] = this.search;
+                    this.g[next] = tentative;
+                    this.parentMove[next] = (byte) i;
+
+                    final var f = tentative + this.heuristic(nr, nc);
+                    this.open.push(Math.max(f, this.open.lastKey()), next);
+                }
+            }
+        }
+
+        this.expanded += count;
+
+        if (best < 0) {
+            // Everything reachable was expanded without meeting the target
+            return Action.DO_NOTHING;
+        }
+
+        // RTAA* update: f(best) - g(s) bounds the cost from every expanded s
+        final var bestF = this.g[best] + this.heuristic(best / this.cols, best % this.cols);
+        for (int i = 0; i < count; i++) {
+            final var cell = this.closedCells[i];
+            final var value = Math.max(
+                bestF - this.g[cell],
+                this.heuristic(cell / this.cols, cell % this.cols));
+
+            this.learned[cell] = (int) Math.min(value, Integer.MAX_VALUE - 1);
+        }
+
+        // Walk back from best to the tile right after the start
+        var cell = best;
+        var move = this.parentMove[cell];
+        while (true) {
+            final var parent = (cell / this.cols - PathFinder.rowVector[move]) * this.cols
+                + (cell % this.cols - PathFinder.colVector[move]);
+            if (parent == start) {
+                break;
+            }
+            cell = parent;
+            move = this.parentMove[cell];
+        }
+        return PathFinder.mapActionIx(move);
+    }
+
+    /* Default file name for the table learned on env towards a target */
+    public static Path tableFile(Path dir, Environment env, int targetRow, int targetCol)
+    {
+        return dir.resolve(String.format(
+            "rtaa-%016x-%d-%d.bin", env.fingerprint(), targetRow, targetCol));
+    }
+
+    /*
+     * Writes the learned values together with the terrain fingerprint
+     * and target they were learned for.
+     */
+    public void save(Path file) throws IOException
+    {
+        final var header = ByteBuffer.allocate(HEADER_BYTES - TableFile.HEADER_BYTES);
+        header.putInt(this.targetRow);
+        header.putInt(this.targetCol);
+        header.flip();
+
+        final var body = ByteBuffer.allocate(this.learned.length * Integer.BYTES);
+        body.asIntBuffer().put(this.learned);
+
+        TableFile.write(
+            file, MAGIC, VERSION, this.rows, this.cols, this.fingerprint, header, body);
+    }
+
+    /*
+     * Restores a table saved for env's current terrain and the given
+     * target, or returns null if file was learned for something else.
+     */
+    public static RealTimeSearch load(
+        Environment env,
+        int targetRow,
+        int targetCol,
+        int lookahead,
+        Path file) throws IOException
+    {
+        final var mapped =
+            TableFile.map(file, MAGIC, VERSION, HEADER_BYTES, "real-time search table", env);
+        if (mapped == null || mapped.getInt() != targetRow || mapped.getInt() != targetCol) {
+            return null;
+        }
+
+        final var body = mapped.asIntBuffer();
+        if (body.remaining() != env.getRows() * env.getCols()) {
+            throw new IOException("Truncated real-time search table: " + file);
+        }
+
+        final var learned = new int[body.remaining()];
+        body.get(learned);
+        return new RealTimeSearch(env, targetRow, targetCol, lookahead, learned);
+    }
+
+    /* Loads the table at file if it matches, otherwise starts a fresh one */
+    public static RealTimeSearch loadOrCreate(
+        Environment env,
+        int targetRow,
+        int targetCol,
+        int lookahead,
+        Path file) throws IOException
+    {
+        if (Files.exists(file)) {
+            final var loaded = load(env, targetRow, targetCol, lookahead, file);
+            if (loaded != null) {
+                return loaded;
+            }
+        }
+        return new RealTimeSearch(env, targetRow, targetCol, lookahead);
+    }
+}
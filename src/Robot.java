@@ -1,4 +1,5 @@
-
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
     Represents an intelligent agent moving through a particular room.
@@ -20,7 +21,28 @@ public class Robot
     public int expanded = 0;
     private int timeStep = 0;
 
+    private static final AtomicInteger nextId = new AtomicInteger();
+    public final int id = nextId.getAndIncrement();
+
     private PathFinder pathfinder;
+
+    /**
+     * searchAlgorithm that makes the Robot act in real time: no plan up
+     * front, a bounded local search before every move instead.
+     */
+    public static final String REAL_TIME = "RTAAStar";
+    public static final int DEFAULT_LOOKAHEAD = 64;
+
+    private RealTimeSearch realTime;
+
+    /**
+     * searchAlgorithm that follows a FirstMoveDatabase instead of
+     * searching; robots fall back to FALLBACK once the terrain changes.
+     */
+    public static final String FIRST_MOVES = "CPD";
+    public static final String FALLBACK = "IntAStar";
+
+    private FirstMoveDatabase firstMoves;
     /**
         Initializes a Robot on a specific tile in the environment.
     */
@@ -66,12 +88,188 @@ public class Robot
         posCol--;
     }
 
+    /**
+     * Record the next plan's expansions and parent updates to trace.
+     */
+    public void setTrace(SearchTrace trace)
+    {
+        this.pathfinder.trace = trace;
+    }
+
+    /**
+     * Use ALT landmark bounds in the heuristic of informed searches.
+     */
+    public void setLandmarks(LandmarkHeuristic landmarks)
+    {
+        this.pathfinder.landmarks = landmarks;
+        if (this.realTime != null) {
+            this.realTime.landmarks = landmarks;
+        }
+    }
+
+    /**
+     * Follow optimal first moves from the table instead of searching, and
+     * plan again from where the Robot stands.
+     */
+    public void setFirstMoves(FirstMoveDatabase firstMoves)
+    {
+        this.firstMoves = firstMoves;
+        this.searchAlgorithm = FIRST_MOVES;
+        this.replan();
+    }
+
+    /**
+     * Act in real time with the given search, e.g. one whose learned
+     * heuristic was loaded from an earlier run.
+     */
+    public void setRealTime(RealTimeSearch realTime)
+    {
+        realTime.landmarks = this.pathfinder.landmarks;
+        this.realTime = realTime;
+        this.searchAlgorithm = REAL_TIME;
+    }
+
+    /**
+     * The real-time search the Robot acts with, or null.
+     */
+    public RealTimeSearch getRealTime()
+    {
+        return this.realTime;
+    }
+
+    public boolean isRealTime()
+    {
+        return REAL_TIME.equals(this.searchAlgorithm);
+    }
+
     /**
      * Construct search tree before Robot start moving.
      */
     public void plan()
     {
+        // Real-time robots only look ahead when they have to move
+        if (this.isRealTime()) {
+            if (this.realTime == null) {
+                this.setRealTime(new RealTimeSearch(
+                    this.env, this.env.getTargetRow(), this.env.getTargetCol(),
+                    DEFAULT_LOOKAHEAD));
+            }
+            return;
+        }
+
+        final var event = new PlanEvent();
+        event.begin();
+
         this.pathfinder.search(searchAlgorithm);
+        this.expanded = this.pathfinder.expanded;
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.robot = this.id;
+            event.algorithm = this.searchAlgorithm;
+            event.rows = this.env.getRows();
+            event.cols = this.env.getCols();
+            event.startRow = this.posRow;
+            event.startCol = this.posCol;
+            event.expanded = this.expanded;
+            event.pathLength = this.pathfinder.path.size();
+            event.commit();
+        }
+    }
+
+    /**
+     * Discard the current plan and search again from where the Robot
+     * stands, e.g. after a tile on its path changed.
+     */
+    public void replan()
+    {
+        var landmarks = this.pathfinder.landmarks;
+
+        // The tables only hold for the terrain they were built on
+        if (this.firstMoves != null && !this.firstMoves.matches(this.env)) {
+            this.firstMoves = null;
+            this.searchAlgorithm = FALLBACK;
+        }
+        if (landmarks != null && !landmarks.matches(this.env)) {
+            landmarks = null;
+            if (this.realTime != null) {
+                this.realTime.landmarks = null;
+            }
+        }
+
+        this.pathfinder = new PathFinder(this.env, this.posRow, this.posCol);
+        this.pathfinder.landmarks = landmarks;
+        this.pathfinder.firstMoves = this.firstMoves;
+        this.pathfinder.quiet = true;
+        this.timeStep = 0;
+
+        this.plan();
+    }
+
+    /**
+     * Whether the plan found a path to the target.
+     */
+    public boolean hasPlan()
+    {
+        if (this.isRealTime()) {
+            return true;
+        }
+        return !this.pathfinder.path.isEmpty();
+    }
+
+    /**
+     * The tiles the Robot has yet to enter on its plan, in order. Empty
+     * in real time, where the next tile is only decided on the move.
+     */
+    public List<PathFinder.Node> getRemainingPath()
+    {
+        if (this.isRealTime()) {
+            return List.of();
+        }
+
+        final var path = this.pathfinder.path;
+        final var from = Math.min(this.timeStep + 1, path.size());
+
+        return path.subList(from, path.size());
+    }
+
+    /**
+     * Whether the Robot's plan still has to enter the tile at [row][col].
+     */
+    public boolean crossesAhead(int row, int col)
+    {
+        for (final var node : this.getRemainingPath()) {
+            if (node.x == row && node.y == col) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Timesteps until the Robot stands on the end of its plan.
+     */
+    public int getStepsRemaining()
+    {
+        return Math.max(0, this.pathfinder.path.size() - 1 - this.timeStep);
+    }
+
+    /**
+     * Apply the next steps actions of the plan at once. Equivalent to
+     * that many getAction calls as long as the tiles on the plan have not
+     * changed since it was made.
+     */
+    public void fastForward(int steps)
+    {
+        final var path = this.pathfinder.path;
+
+        this.timeStep += steps;
+
+        if (!path.isEmpty()) {
+            final var node = path.get(Math.min(this.timeStep, path.size() - 1));
+            this.posRow = node.x;
+            this.posCol = node.y;
+        }
     }
 
     /**
@@ -85,7 +283,19 @@ public class Robot
         TileStatus status = env.getTileStatus(posRow, posCol);
         Action action = Action.DO_NOTHING;
 
-        action = this.pathfinder.path.get(this.timeStep).action;
+        if (this.isRealTime()) {
+            this.plan();
+            action = this.realTime.step(posRow, posCol);
+            this.expanded = (int) Math.min(this.realTime.expanded, Integer.MAX_VALUE);
+            this.timeStep += 1;
+
+            return action;
+        }
+
+        // Stay put once the plan runs out, or if no plan was found
+        if (this.timeStep < this.pathfinder.path.size()) {
+            action = this.pathfinder.path.get(this.timeStep).action;
+        }
         this.timeStep += 1;
 
         return action;
@@ -1,13 +1,35 @@
 
 
 import java.util.ArrayList;
+import java.util.PriorityQueue;
 
 public class RunSimulation {
+	/* A scripted change to one tile */
+	public static class TileChange implements Comparable<TileChange> {
+		public final int timestep, row, col, cost;
+		public final TileStatus status;
+		
+		public TileChange(int timestep, int row, int col, TileStatus status, int cost) {
+			this.timestep = timestep;
+			this.row = row;
+			this.col = col;
+			this.status = status;
+			this.cost = cost;
+		}
+		
+		public int compareTo(TileChange other) {
+			return Integer.compare(timestep, other.timestep);
+		}
+	}
+	
 	private Environment env;
 	private ArrayList<Robot> robots;
 	private int numRobots;
 	private int timesteps, timestepsStop;
 	private boolean goalMet;
+	private PriorityQueue<TileChange> changes;
+	private PathIndex pathIndex;
+	private int replans;
 	
 	public RunSimulation(String searchAlgorithm, int start_row, int start_col, int target_row, int target_col, String env_id) {
 		this.env = new Environment(env_id);
@@ -24,6 +46,51 @@ public class RunSimulation {
 		// number of time steps before stopping simulation
 		this.timestepsStop = 200;
 		this.goalMet = false;
+		this.changes = new PriorityQueue<TileChange>();
+		this.pathIndex = new PathIndex(env);
+		for(Robot robot : robots) {
+			pathIndex.add(robot);
+		}
+		this.replans = 0;
+	}
+	
+	/* Scripts a tile change (a door closing, a puddle appearing, ...) to
+	 * happen once the given number of timesteps have passed.
+	 */
+	public void scheduleTileChange(int timestep, int row, int col, TileStatus status, int cost) {
+		changes.add(new TileChange(timestep, row, col, status, cost));
+	}
+	
+	/* Applies the changes due this timestep. Only robots whose remaining
+	 * path crosses a changed tile replan, found through the path index;
+	 * robots without a plan retry once a tile opens up and the component
+	 * index says their target became reachable.
+	 */
+	private void applyTileChanges() {
+		while (!changes.isEmpty() && changes.peek().timestep <= timesteps) {
+			TileChange change = changes.poll();
+			env.setTileStatuse(change.row, change.col, change.status, change.cost);
+			
+			for (Robot robot : pathIndex.robotsCrossing(change.row, change.col)) {
+				if (robot.crossesAhead(change.row, change.col)) {
+					replan(robot);
+				}
+			}
+			if (env.validPos(change.row, change.col)) {
+				for (Robot robot : robots) {
+					if (!robot.hasPlan() && !env.goalConditionMet(robot)
+							&& env.targetReachable(robot.getPosRow(), robot.getPosCol())) {
+						replan(robot);
+					}
+				}
+			}
+		}
+	}
+	
+	private void replan(Robot robot) {
+		robot.replan();
+		pathIndex.add(robot);
+		replans++;
 	}
 	
 	public void run() {
@@ -43,6 +110,72 @@ public class RunSimulation {
 		printPerformanceMeasure();
 	}
 	
+	/* Same outcome as run(), but instead of stepping every robot each
+	 * timestep it jumps straight to the next interesting timestep: the
+	 * earliest arrival of a robot at the target, a scripted tile change,
+	 * or the step limit. In a static stretch of the simulation a robot's
+	 * position after k timesteps is just the k-th tile of its plan, so
+	 * per-tick stepping only happens on timesteps where tiles change.
+	 * Real-time robots decide every move as they go, so with any of
+	 * those this is just run().
+	 */
+	public void runFastForward() {
+		for (Robot robot : robots) {
+			if (robot.isRealTime()) {
+				run();
+				return;
+			}
+		}
+		while (timesteps < timestepsStop) {
+			int arrival = Integer.MAX_VALUE;
+			for (Robot robot : robots) {
+				if (env.goalConditionMet(robot)) {
+					// Goal is only checked after a move
+					arrival = Math.min(arrival, timesteps + 1);
+				} else if (robot.getStepsRemaining() > 0) {
+					arrival = Math.min(arrival, timesteps + robot.getStepsRemaining());
+				}
+			}
+			int horizon = Math.min(arrival, timestepsStop);
+			int nextChange = changes.isEmpty() ? Integer.MAX_VALUE
+					: Math.max(changes.peek().timestep, timesteps);
+			
+			if (nextChange < horizon) {
+				fastForward(nextChange - timesteps);
+				// Changes apply before this tick's moves, so step it normally
+				updateEnvironment();
+				if (timesteps == timestepsStop) {
+					break;
+				}
+				for (Robot robot : robots) {
+					if (env.goalConditionMet(robot)) {
+						goalMet = true;
+						break;
+					}
+				}
+				if (goalMet) break;
+				continue;
+			}
+			
+			fastForward(horizon - timesteps);
+			if (timesteps < timestepsStop) {
+				goalMet = true;
+			}
+			break;
+		}
+		printPerformanceMeasure();
+	}
+	
+	private void fastForward(int steps) {
+		if (steps <= 0) {
+			return;
+		}
+		for (Robot robot : robots) {
+			robot.fastForward(steps);
+		}
+		timesteps += steps;
+	}
+	
 	public double getTimesteps() {
         return timesteps;
 	}
@@ -50,10 +183,28 @@ public class RunSimulation {
 	public void printPerformanceMeasure() {
 		System.out.printf("Simulation Completed in %d timesteps\n", timesteps);
 		System.out.println("Goal Condition Met: " + goalMet); 
+		if (replans > 0) {
+			System.out.println("Replans: " + replans);
+		}
+	}
+	
+	public int getReplans() {
+		return replans;
+	}
+	
+	public boolean isGoalMet() {
+		return goalMet;
+	}
+	
+	public ArrayList<Robot> getRobots() {
+		return robots;
 	}
 
 	// Gets the new state of the world after robot actions
 	public void updateEnvironment() {
+		TickEvent event = new TickEvent();
+		event.begin();
+		applyTileChanges();
 		timesteps++;
 		for(Robot robot : robots) {
 			Action action = robot.getAction();
@@ -81,6 +232,12 @@ public class RunSimulation {
                 break;
 			}
 		}
+		event.end();
+		if (event.shouldCommit()) {
+			event.timestep = timesteps;
+			event.robots = robots.size();
+			event.commit();
+		}
 	}
 	
 	public static void main(String[] args) {
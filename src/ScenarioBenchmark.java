@@ -0,0 +1,354 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end benchmark over Moving AI style scenario files
+ * (https://movingai.com/benchmarks/formats.html). Every query of every
+ * scenario is answered by each selected algorithm through
+ * PathFinder.search, and one CSV row is written per scenario and
+ * algorithm with throughput, latency percentiles, mean expanded nodes
+ * and the optimality gap against the scenario's reference cost.
+ *
+ * Usage:
+ *   java ScenarioBenchmark [-o out.csv] [-a BFS,AStar,...] [-m mapDir]
+ *                          [-w warmupRounds] [-l landmarks]
+ *                          [-t timeoutMillis] file.scen...
+ *
+ * With -l, ALT landmark tables are loaded from (or built and saved to)
+ * <map>.alt and handed to every PathFinder. Every query gets -t
+ * milliseconds (DEFAULT_TIMEOUT_MILLIS) before it is stopped and counted
+ * as unsolved. Without -a all algorithms but HillClimbing run; its random
+ * walk has no useful bound on how long a query takes.
+ *
+ * The reference cost column must have been computed for this
+ * simulation's cost model (4-connected moves, entering a tile costs its
+ * tile cost plus one, see PathFinder.stepCost); published Moving AI
+ * scenarios use octile distances, so their gaps are only comparable
+ * between algorithms, not absolute.
+ */
+public class ScenarioBenchmark
+{
+    public static final long DEFAULT_TIMEOUT_MILLIS = 10000;
+
+    /* Algorithms run when none are named */
+    public static final String[] DEFAULT_ALGORITHMS = Arrays.stream(PathFinder.ALGORITHMS)
+        .filter(algorithm -> !algorithm.equals("HillClimbing"))
+        .toArray(String[]::new);
+
+    public static class Query
+    {
+        public final String map;
+        public final int startRow, startCol, goalRow, goalCol;
+        public final double optimalCost;
+
+        public Query(
+            String map,
+            int startRow,
+            int startCol,
+            int goalRow,
+            int goalCol,
+            double optimalCost)
+        {
+            this.map = map;
+            this.startRow = startRow;
+            this.startCol = startCol;
+            this.goalRow = goalRow;
+            this.goalCol = goalCol;
+            this.optimalCost = optimalCost;
+        }
+    }
+
+    public static class Result
+    {
+        public final String scenario, map, algorithm;
+        public final int queries, solved, timedOut;
+        public final long[] latencies;
+        public final double meanExpanded, meanGap, maxGap;
+        public final double seconds;
+
+        public Result(
+            String scenario,
+            String map,
+            String algorithm,
+            int solved,
+            int timedOut,
+            long[] latencies,
+            double meanExpanded,
+            double meanGap,
+            double maxGap)
+        {
+            this.scenario = scenario;
+            this.map = map;
+            this.algorithm = algorithm;
+            this.queries = latencies.length;
+            this.solved = solved;
+            this.timedOut = timedOut;
+            this.latencies = latencies.clone();
+            this.meanExpanded = meanExpanded;
+            this.meanGap = meanGap;
+            this.maxGap = maxGap;
+
+            Arrays.sort(this.latencies);
+            this.seconds = Arrays.stream(this.latencies).sum() / 1e9;
+        }
+
+        /* Nearest-rank percentile of the query latencies, in milliseconds */
+        public double percentileMillis(double p)
+        {
+            if (this.latencies.length == 0) {
+                return 0.0;
+            }
+            final var rank = (int) Math.ceil(p / 100.0 * this.latencies.length);
+            final var ix = Math.min(Math.max(rank, 1), this.latencies.length) - 1;
+            return this.latencies[ix] / 1e6;
+        }
+
+        public double throughput()
+        {
+            return this.seconds > 0 ? this.queries / this.seconds : 0.0;
+        }
+    }
+
+    public static List<Query> readScenario(Path file) throws IOException
+    {
+        final var queries = new ArrayList<Query>();
+
+        for (final var line : Files.readAllLines(file)) {
+            final var trimmed = line.trim();
+
+            if (trimmed.isEmpty() || trimmed.startsWith("version")) {
+                continue;
+            }
+
+            // bucket map width height startX startY goalX goalY optimal
+            final var fields = trimmed.split("\\s+");
+            if (fields.length < 9) {
+                throw new IOException("Malformed scenario line: " + line);
+            }
+
+            queries.add(new Query(
+                fields[1],
+                Integer.parseInt(fields[5]),
+                Integer.parseInt(fields[4]),
+                Integer.parseInt(fields[7]),
+                Integer.parseInt(fields[6]),
+                Double.parseDouble(fields[8])));
+        }
+        return queries;
+    }
+
+    /*
+     * Cost of a path under the model the searches minimize, the step
+     * costs of the tiles entered, excluding the start
+     */
+    public static double pathCost(PathFinder finder, List<PathFinder.Node> path)
+    {
+        double cost = 0;
+        for (int i = 1; i < path.size(); i++) {
+            final var node = path.get(i);
+            cost += finder.stepCost(node.x, node.y);
+        }
+        return cost;
+    }
+
+    public static Result run(
+        String scenario,
+        Environment env,
+        LandmarkHeuristic landmarks,
+        List<Query> queries,
+        String algorithm)
+    {
+        return run(scenario, env, landmarks, queries, algorithm, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /* Runs every query, stopping any that takes longer than timeoutMillis */
+    public static Result run(
+        String scenario,
+        Environment env,
+        LandmarkHeuristic landmarks,
+        List<Query> queries,
+        String algorithm,
+        long timeoutMillis)
+    {
+        final var latencies = new long[queries.size()];
+
+        int solved = 0, timedOut = 0, gaps = 0;
+        double expanded = 0, gapSum = 0, maxGap = 0;
+
+        for (int i = 0; i < queries.size(); i++) {
+            final var query = queries.get(i);
+            final var begin = System.nanoTime();
+
+            // An explicit goal is priced by its terrain, as in PlanResult,
+            // where a TARGET marker would cost 1 whatever it covers
+            List<PathFinder.Node> path = null;
+            var finder = new PathFinder(
+                env, query.startRow, query.startCol, query.goalRow, query.goalCol);
+            finder.quiet = true;
+            finder.landmarks = landmarks;
+            finder.setTimeout(TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+
+            try {
+                path = finder.search(algorithm);
+            } catch (RuntimeException | StackOverflowError e) {
+                // RBFS can run out of frontier or stack on large maps
+                path = null;
+            }
+
+            latencies[i] = System.nanoTime() - begin;
+            expanded += finder.expanded;
+
+            if (finder.status == SearchStatus.TIMED_OUT) {
+                timedOut++;
+            }
+
+            if (path != null) {
+                solved++;
+
+                if (query.optimalCost > 0) {
+                    final var gap =
+                        (pathCost(finder, path) - query.optimalCost) / query.optimalCost;
+                    gapSum += gap;
+                    maxGap = Math.max(maxGap, gap);
+                    gaps++;
+                }
+            }
+        }
+
+        final var map = queries.isEmpty() ? "" : queries.get(0).map;
+        return new Result(
+            scenario,
+            map,
+            algorithm,
+            solved,
+            timedOut,
+            latencies,
+            queries.isEmpty() ? 0 : expanded / queries.size(),
+            gaps == 0 ? 0 : gapSum / gaps,
+            maxGap);
+    }
+
+    public static void writeHeader(PrintStream out)
+    {
+        out.println(
+            "scenario,map,algorithm,queries,solved,throughput_qps,"
+            + "p50_ms,p99_ms,max_ms,mean_expanded,mean_gap,max_gap,timed_out");
+    }
+
+    public static void writeRow(PrintStream out, Result result)
+    {
+        out.printf(
+            "%s,%s,%s,%d,%d,%.2f,%.4f,%.4f,%.4f,%.1f,%.6f,%.6f,%d%n",
+            result.scenario,
+            result.map,
+            result.algorithm,
+            result.queries,
+            result.solved,
+            result.throughput(),
+            result.percentileMillis(50),
+            result.percentileMillis(99),
+            result.percentileMillis(100),
+            result.meanExpanded,
+            result.meanGap,
+            result.maxGap,
+            result.timedOut);
+    }
+
+    private static Path resolveMap(Path scenario, Path mapDir, String map)
+    {
+        final var base = mapDir != null ? mapDir : scenario.toAbsolutePath().getParent();
+        final var direct = base.resolve(map);
+
+        if (Files.exists(direct)) {
+            return direct;
+        }
+        return base.resolve(Paths.get(map).getFileName());
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        var algorithms = DEFAULT_ALGORITHMS;
+        PrintStream out = System.out;
+        Path mapDir = null;
+        int warmup = 1;
+        int landmarkCount = 0;
+        long timeout = DEFAULT_TIMEOUT_MILLIS;
+
+        final var scenarios = new ArrayList<Path>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-o":
+                    out = new PrintStream(Files.newOutputStream(Paths.get(args[++i])));
+                    break;
+                case "-a":
+                    algorithms = args[++i].split(",");
+                    break;
+                case "-m":
+                    mapDir = Paths.get(args[++i]);
+                    break;
+                case "-w":
+                    warmup = Integer.parseInt(args[++i]);
+                    break;
+                case "-l":
+                    landmarkCount = Integer.parseInt(args[++i]);
+                    break;
+                case "-t":
+                    timeout = Long.parseLong(args[++i]);
+                    break;
+                default:
+                    scenarios.add(Paths.get(args[i]));
+                    break;
+            }
+        }
+
+        if (scenarios.isEmpty()) {
+            System.err.println(
+                "usage: ScenarioBenchmark [-o out.csv] [-a BFS,AStar,...] "
+                + "[-m mapDir] [-w warmupRounds] [-l landmarks] [-t timeoutMillis] "
+                + "file.scen...");
+            System.exit(1);
+        }
+
+        writeHeader(out);
+
+        for (final var scenario : scenarios) {
+            final var queries = readScenario(scenario);
+            if (queries.isEmpty()) {
+                continue;
+            }
+
+            final var mapFile = resolveMap(scenario, mapDir, queries.get(0).map);
+            final var env = MapLoader.load(mapFile);
+            final var name = scenario.getFileName().toString();
+
+            LandmarkHeuristic landmarks = null;
+            if (landmarkCount > 0) {
+                landmarks = LandmarkHeuristic.loadOrBuild(
+                    env,
+                    landmarkCount,
+                    mapFile.resolveSibling(mapFile.getFileName() + ".alt"));
+            }
+
+            for (final var algorithm : algorithms) {
+                // Let the JIT settle before the measured round
+                for (int i = 0; i < warmup; i++) {
+                    run(name, env, landmarks, queries, algorithm, timeout);
+                }
+                writeRow(out, run(name, env, landmarks, queries, algorithm, timeout));
+                out.flush();
+            }
+        }
+
+        if (out != System.out) {
+            out.close();
+        }
+    }
+}
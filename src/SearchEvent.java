@@ -0,0 +1,28 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event covering one PathFinder.search call.
+ */
+@Name("csc411.Search")
+@Label("Search")
+@Category({"CSC411", "Planning"})
+@Description("A single search algorithm run by PathFinder")
+public class SearchEvent extends jdk.jfr.Event
+{
+    @Label("Algorithm") public String algorithm;
+
+    @Label("Rows") public int rows;
+    @Label("Columns") public int cols;
+
+    @Label("Start Row") public int startRow;
+    @Label("Start Column") public int startCol;
+
+    @Label("Target Row") public int targetRow;
+    @Label("Target Column") public int targetCol;
+
+    @Label("Expanded Nodes") public int expanded;
+    @Label("Reached Target") public boolean reachedTarget;
+}
@@ -0,0 +1,309 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A resumable Dijkstra or A* search over integer costs (the IntDijkstra
+ * and IntAStar of PathFinder). Instead of running to the end in one call,
+ * advance(n) expands at most n nodes and returns, keeping the open set,
+ * costs and parents for the next call. A caller can thus time-box a
+ * query, watch it grow, or interleave many queries on one thread.
+ *
+ * The search runs on a PathFinder, whose goal, landmarks and trace it
+ * uses, and stops cooperatively: cancel() from any thread, or a deadline
+ * set on the finder, ends it at the next expansion as CANCELLED or
+ * TIMED_OUT. A handle is driven by one thread at a time.
+ */
+public class SearchHandle
+{
+    private final PathFinder finder;
+    private final String algorithm;
+    private final boolean informed;
+
+    private final int cols;
+    private final long[] g;
+    private final byte[] parentMove;
+    private final RadixHeap open;
+
+    private SearchStatus status;
+    private PlanResult result;
+
+    /* Starts algorithm ("IntAStar" or "IntDijkstra") on a prepared finder */
+    public SearchHandle(PathFinder finder, String algorithm)
+    {
+        this(finder, algorithm, informed(algorithm));
+    }
+
+    /* Starts a search from [startRow][startCol] to [goalRow][goalCol] */
+    public SearchHandle(
+        Environment env,
+        String algorithm,
+        int startRow,
+        int startCol,
+        int goalRow,
+        int goalCol)
+    {
+        this(quietFinder(env, startRow, startCol, goalRow, goalCol), algorithm);
+    }
+
+    /* The search behind PathFinder.integerSearch */
+    SearchHandle(PathFinder finder, boolean informed)
+    {
+        this(finder, informed ? "IntAStar" : "IntDijkstra", informed);
+    }
+
+    private SearchHandle(PathFinder finder, String algorithm, boolean informed)
+    {
+        this.finder = finder;
+        this.algorithm = algorithm;
+        this.informed = informed;
+
+        this.cols = finder.getCols();
+        final var cells = finder.getRows() * this.cols;
+
+        this.g = new long[cells];
+        this.parentMove = new byte[cells];
+        this.open = new RadixHeap();
+        this.status = SearchStatus.RUNNING;
+
+        final var start = finder.rowPos * this.cols + finder.colPos;
+        Arrays.fill(this.g, Long.MAX_VALUE);
+        this.g[start] = 0;
+        this.parentMove[start] = -1;
+        this.open.push(
+            informed ? finder.intHeuristic(finder.rowPos, finder.colPos) : 0, start);
+
+        // Walled-off goals fail without flooding the start's component
+        if (finder.endNode != null && !finder.goalReachable()) {
+            this.finish(SearchStatus.FAILED, -1);
+        }
+    }
+
+    private static boolean informed(String algorithm)
+    {
+        switch (algorithm) {
+            case "IntAStar":
+                return true;
+            case "IntDijkstra":
+                return false;
+            default:
+                throw new IllegalArgumentException(
+                    "Only IntAStar and IntDijkstra can be run step-wise: " + algorithm);
+        }
+    }
+
+    private static PathFinder quietFinder(
+        Environment env,
+        int startRow,
+        int startCol,
+        int goalRow,
+        int goalCol)
+    {
+        final var finder = new PathFinder(env, startRow, startCol, goalRow, goalCol);
+        finder.quiet = true;
+        return finder;
+    }
+
+    public PathFinder getFinder()
+    {
+        return this.finder;
+    }
+
+    public String getAlgorithm()
+    {
+        return this.algorithm;
+    }
+
+    public SearchStatus getStatus()
+    {
+        return this.status;
+    }
+
+    public boolean isDone()
+    {
+        return this.status.isDone();
+    }
+
+    /* Nodes expanded so far, over all advance calls */
+    public int getExpanded()
+    {
+        return this.finder.expanded;
+    }
+
+    /* Asks the search to stop; safe to call from any thread */
+    public void cancel()
+    {
+        this.finder.cancel();
+    }
+
+    /* Stops the search as TIMED_OUT once System.nanoTime() passes nanoTime */
+    public void setDeadline(long nanoTime)
+    {
+        this.finder.setDeadline(nanoTime);
+    }
+
+    /*
+     * Expands up to expansions more nodes. Returns RUNNING if the budget
+     * ran out first, otherwise how the search ended; once ended, further
+     * calls return the same status without doing anything.
+     */
+    public SearchStatus advance(int expansions)
+    {
+        if (this.status.isDone()) {
+            return this.status;
+        }
+
+        final var reason = this.finder.stopReason();
+        if (reason != null) {
+            return this.finish(reason, -1);
+        }
+
+        final var finder = this.finder;
+        final var env = finder.env;
+        final var cols = this.cols;
+        final var g = this.g;
+        final var parentMove = this.parentMove;
+        final var open = this.open;
+
+        var budget = expansions;
+
+        while (!open.isEmpty()) {
+            if (budget == 0) {
+                return this.status;
+            }
+
+            final var cell = open.pop();
+            final var row = cell / cols;
+            final var col = cell % cols;
+
+            if (finder.visitedTiles[row][col]) {
+                continue;
+            }
+
+            // Cancellation every expansion, the clock every 64
+            if (finder.isCancelled() || (finder.expanded & 63) == 0) {
+                final var stop = finder.stopReason();
+                if (stop != null) {
+                    return this.finish(stop, -1);
+                }
+            }
+
+            finder.visitedTiles[row][col] = true;
+            finder.expanded++;
+            budget--;
+
+            if (finder.trace != null) {
+                finder.trace.expand(row, col);
+            }
+
+            if (finder.isGoal(row, col)) {
+                return this.finish(SearchStatus.FOUND, cell);
+            }
+
+            for (int i = 0; i < PathFinder.rowVector.length; i++) {
+                final var r = row + PathFinder.rowVector[i];
+                final var c = col + PathFinder.colVector[i];
+
+                if (!env.validPos(r, c) || finder.visitedTiles[r][c]) {
+                    continue;
+                }
+
+                final var neighbor = r * cols + c;
+                final var tentative = g[cell] + finder.stepCost(r, c);
+
+                if (tentative < g[neighbor]) {
+                    g[neighbor] = tentative;
+                    parentMove[neighbor] = (byte) i;
+
+                    if (finder.trace != null) {
+                        finder.trace.parent(r, c, PathFinder.mapActionIx(i));
+                    }
+
+                    final var f = tentative + (this.informed ? finder.intHeuristic(r, c) : 0);
+                    // Keeps the heap monotone should tile costs below one
+                    // make the heuristic inconsistent
+                    open.push(Math.max(f, open.lastKey()), neighbor);
+                }
+            }
+        }
+
+        return this.finish(SearchStatus.FAILED, -1);
+    }
+
+    /* Runs the search to the end, or until it is stopped */
+    public SearchStatus run()
+    {
+        while (this.advance(Integer.MAX_VALUE) == SearchStatus.RUNNING) {
+            // Only returns early when the budget runs out
+        }
+        return this.status;
+    }
+
+    private SearchStatus finish(SearchStatus status, int goal)
+    {
+        this.status = status;
+        this.finder.status = status;
+        this.open.clear();
+
+        if (goal < 0) {
+            return status;
+        }
+
+        // Copy just the path into the finder's parent map for getPath
+        final var cols = this.cols;
+        var cell = goal;
+        while (this.parentMove[cell] >= 0) {
+            final var move = this.parentMove[cell];
+            final var row = cell / cols;
+            final var col = cell % cols;
+            final var parentRow = row - PathFinder.rowVector[move];
+            final var parentCol = col - PathFinder.colVector[move];
+
+            this.finder.pathMap.put(
+                this.finder.new Node(row, col),
+                this.finder.new Node(parentRow, parentCol, PathFinder.mapActionIx(move)));
+            cell = parentRow * cols + parentCol;
+        }
+
+        this.finder.finishSearch(this.finder.new Node(goal / cols, goal % cols));
+        return status;
+    }
+
+    /*
+     * The outcome once the search is done, or null while it is RUNNING.
+     * Stopped searches come back as having no path.
+     */
+    public PlanResult getResult()
+    {
+        if (!this.status.isDone()) {
+            return null;
+        }
+        if (this.result == null) {
+            if (this.status == SearchStatus.FOUND) {
+                this.finder.getPath();
+                this.result = PlanResult.of(this.algorithm, this.finder, this.finder.path);
+            } else {
+                this.result = PlanResult.noPath(
+                    this.algorithm, this.finder.expanded, this.status);
+            }
+        }
+        return this.result;
+    }
+
+    /*
+     * Drives every handle to the end on the calling thread, round robin,
+     * quantum expansions per handle per turn, so a long search cannot
+     * hold up the short ones behind it. Returns the number of rounds.
+     */
+    public static int interleave(List<SearchHandle> handles, int quantum)
+    {
+        final var running = new ArrayList<SearchHandle>(handles);
+        var rounds = 0;
+
+        while (!running.isEmpty()) {
+            rounds++;
+            running.removeIf(handle -> handle.advance(quantum).isDone());
+        }
+        return rounds;
+    }
+}
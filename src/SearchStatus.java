@@ -0,0 +1,18 @@
+/**
+ * Where a search stands: still RUNNING, or how it ended. CANCELLED and
+ * TIMED_OUT searches were stopped before they could tell whether a path
+ * exists.
+ */
+public enum SearchStatus
+{
+    RUNNING,
+    FOUND,
+    FAILED,
+    CANCELLED,
+    TIMED_OUT;
+
+    public boolean isDone()
+    {
+        return this != RUNNING;
+    }
+}
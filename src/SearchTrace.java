@@ -0,0 +1,292 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A compact binary log of a single search: every expansion and every
+ * parent update, in the order PathFinder made them. Attach one to
+ * PathFinder.trace to record, then replay it with
+ * VisualizeSimulation --replay without running the search again.
+ *
+ * Layout: a header (int magic, byte version, int rows, int cols, long
+ * terrain fingerprint, int start row and col, int target row and col,
+ * long event count, then the map's source as a short length and UTF-8
+ * bytes, empty if unknown) followed by records. The size, fingerprint
+ * and source name the map the search ran on, so a replay can load that
+ * map and refuse any other. The event count is filled in on close. Each record is a tag byte and the cell's
+ * zigzag varint delta from the previous record's cell index
+ * (row * cols + col), so a frontier that moves locally costs about two
+ * bytes per event. Parent updates store the move from the parent in the
+ * tag rather than the parent cell itself.
+ */
+public class SearchTrace implements Closeable
+{
+    public static final int MAGIC = 0x53545243; // "STRC"
+    public static final byte VERSION = 2;
+
+    public static final int EXPAND = 1;
+    public static final int PARENT = 2;
+    public static final int END = 3;
+
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    // Header up to the source length, and where the event count sits
+    private static final int FIXED_HEADER_BYTES = 47;
+    private static final int EVENTS_OFFSET = 37;
+    private static final int MAX_SOURCE_BYTES = 4096;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final int cols;
+
+    private int lastCell;
+    private long events;
+    private boolean finished;
+
+    public SearchTrace(
+        Path file,
+        Environment env,
+        int startRow,
+        int startCol,
+        int targetRow,
+        int targetCol) throws IOException
+    {
+        this.channel = FileChannel.open(
+            file,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        this.cols = env.getCols();
+        this.lastCell = 0;
+        this.events = 0;
+        this.finished = false;
+
+        var source = env.getSource() != null
+            ? env.getSource().getBytes(StandardCharsets.UTF_8)
+            : new byte[0];
+        if (source.length > MAX_SOURCE_BYTES) {
+            source = new byte[0];
+        }
+
+        this.buffer.putInt(MAGIC);
+        this.buffer.put(VERSION);
+        this.buffer.putInt(env.getRows());
+        this.buffer.putInt(env.getCols());
+        this.buffer.putLong(env.fingerprint());
+        this.buffer.putInt(startRow);
+        this.buffer.putInt(startCol);
+        this.buffer.putInt(targetRow);
+        this.buffer.putInt(targetCol);
+        this.buffer.putLong(0);
+        this.buffer.putShort((short) source.length);
+        this.buffer.put(source);
+    }
+
+    /* Opens a trace for roughly sampleRate of the calls, null otherwise */
+    public static SearchTrace sample(
+        double sampleRate,
+        Path file,
+        PathFinder finder) throws IOException
+    {
+        if (ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return null;
+        }
+
+        final var target = finder.endNode;
+        return new SearchTrace(
+            file,
+            finder.env,
+            finder.rowPos,
+            finder.colPos,
+            target != null ? target.x : -1,
+            target != null ? target.y : -1);
+    }
+
+    private void drain()
+    {
+        this.buffer.flip();
+        try {
+            while (this.buffer.hasRemaining()) {
+                this.channel.write(this.buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.buffer.clear();
+    }
+
+    private void record(int tag, int row, int col)
+    {
+        // Tag plus at most five varint bytes
+        if (this.buffer.remaining() < 6) {
+            this.drain();
+        }
+
+        final var cell = row * this.cols + col;
+        final var delta = cell - this.lastCell;
+        var zigzag = (delta << 1) ^ (delta >> 31);
+
+        this.buffer.put((byte) tag);
+        while ((zigzag & ~0x7f) != 0) {
+            this.buffer.put((byte) ((zigzag & 0x7f) | 0x80));
+            zigzag >>>= 7;
+        }
+        this.buffer.put((byte) zigzag);
+
+        this.lastCell = cell;
+        this.events++;
+    }
+
+    public void expand(int row, int col)
+    {
+        this.record(EXPAND, row, col);
+    }
+
+    /* The cell at [row][col] was reached from its neighbor by action */
+    public void parent(int row, int col, Action action)
+    {
+        this.record(PARENT | (action.ordinal() << 2), row, col);
+    }
+
+    /* Marks the end of the search and where it stopped */
+    public void finish(boolean reachedTarget, int row, int col)
+    {
+        this.record(END | (reachedTarget ? 1 << 2 : 0), row, col);
+        this.finished = true;
+    }
+
+    public void close() throws IOException
+    {
+        if (!this.finished) {
+            this.finish(false, 0, 0);
+        }
+        this.drain();
+
+        final var count = ByteBuffer.allocate(Long.BYTES).putLong(this.events);
+        count.flip();
+        while (count.hasRemaining()) {
+            this.channel.write(count, EVENTS_OFFSET + count.position());
+        }
+        this.channel.close();
+    }
+
+    /**
+     * Sequential reader over a recorded trace. Call next() until it
+     * returns false; after each call type, row and col describe the
+     * event, plus action for PARENT events and reachedTarget for END.
+     */
+    public static class Reader implements Closeable
+    {
+        public final int rows, cols;
+        public final long fingerprint;
+        public final int startRow, startCol, targetRow, targetCol;
+        public final long events;
+
+        // The map's source (see Environment.getSource), null if unknown
+        public final String source;
+
+        public int type, row, col;
+        public Action action;
+        public boolean reachedTarget;
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private int lastCell;
+        private boolean eof;
+
+        public Reader(Path file) throws IOException
+        {
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+            this.buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+            this.buffer.flip();
+            this.eof = false;
+            this.lastCell = 0;
+
+            this.fill(FIXED_HEADER_BYTES);
+            if (this.buffer.remaining() < FIXED_HEADER_BYTES
+                || this.buffer.getInt() != MAGIC) {
+                throw new IOException("Not a search trace: " + file);
+            }
+            final var version = this.buffer.get();
+            if (version != VERSION) {
+                throw new IOException("Unsupported search trace version " + version);
+            }
+
+            this.rows = this.buffer.getInt();
+            this.cols = this.buffer.getInt();
+            this.fingerprint = this.buffer.getLong();
+            this.startRow = this.buffer.getInt();
+            this.startCol = this.buffer.getInt();
+            this.targetRow = this.buffer.getInt();
+            this.targetCol = this.buffer.getInt();
+            this.events = this.buffer.getLong();
+
+            final var length = this.buffer.getShort() & 0xffff;
+            this.fill(length);
+            if (length > MAX_SOURCE_BYTES || this.buffer.remaining() < length) {
+                throw new IOException("Truncated search trace: " + file);
+            }
+            final var source = new byte[length];
+            this.buffer.get(source);
+            this.source = length > 0 ? new String(source, StandardCharsets.UTF_8) : null;
+        }
+
+        private void fill(int bytes) throws IOException
+        {
+            if (this.buffer.remaining() >= bytes || this.eof) {
+                return;
+            }
+            this.buffer.compact();
+            while (this.buffer.position() < bytes && !this.eof) {
+                this.eof = this.channel.read(this.buffer) < 0;
+            }
+            this.buffer.flip();
+        }
+
+        public boolean next() throws IOException
+        {
+            if (this.type == END) {
+                return false;
+            }
+
+            this.fill(6);
+            if (!this.buffer.hasRemaining()) {
+                return false;
+            }
+
+            final var tag = this.buffer.get() & 0xff;
+
+            int zigzag = 0, shift = 0, b;
+            do {
+                if (!this.buffer.hasRemaining()) {
+                    throw new IOException("Truncated search trace");
+                }
+                b = this.buffer.get();
+                zigzag |= (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+
+            final var cell = this.lastCell + ((zigzag >>> 1) ^ -(zigzag & 1));
+            this.lastCell = cell;
+
+            this.type = tag & 0x3;
+            this.row = cell / this.cols;
+            this.col = cell % this.cols;
+            this.action = this.type == PARENT ? Action.values()[tag >> 2] : null;
+            this.reachedTarget = this.type == END && (tag >> 2) != 0;
+            return true;
+        }
+
+        public void close() throws IOException
+        {
+            this.channel.close();
+        }
+    }
+}
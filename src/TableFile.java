@@ -0,0 +1,125 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Supplier;
+
+/**
+ * Files holding a table precomputed for one map (LandmarkHeuristic,
+ * FirstMoveDatabase, RealTimeSearch). Every such file starts with the
+ * same header, naming the kind of table and the terrain it was computed
+ * for, and is memory-mapped back in; the terrain fingerprint guards
+ * against using a table on a map it was not computed for.
+ *
+ * Layout (big-endian): int magic, int version, int rows, int cols,
+ * long terrain fingerprint, then the table's own header and its body.
+ */
+public class TableFile
+{
+    public static final int HEADER_BYTES = 24;
+
+    /* Reads a table, or returns null if the file does not fit */
+    public interface Reader<T>
+    {
+        T read(Path file) throws IOException;
+    }
+
+    public interface Writer<T>
+    {
+        void write(T table, Path file) throws IOException;
+    }
+
+    /*
+     * Writes the common header followed by header, the table's own
+     * fields ready to be read, and body, from its position to its limit.
+     */
+    public static void write(
+        Path file,
+        int magic,
+        int version,
+        int rows,
+        int cols,
+        long fingerprint,
+        ByteBuffer header,
+        ByteBuffer body) throws IOException
+    {
+        final var common = ByteBuffer.allocate(HEADER_BYTES);
+        common.putInt(magic);
+        common.putInt(version);
+        common.putInt(rows);
+        common.putInt(cols);
+        common.putLong(fingerprint);
+        common.flip();
+
+        try (final var channel = FileChannel.open(
+                 file,
+                 StandardOpenOption.CREATE,
+                 StandardOpenOption.WRITE,
+                 StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (final var buffer : new ByteBuffer[] {common, header, body}) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        }
+    }
+
+    /*
+     * Memory-maps a table file of the given kind, at least headerBytes
+     * long, and returns it positioned after the common header. Returns
+     * null if the file was computed for a map other than env; a file of
+     * another kind or version is an error. kind names the table in error
+     * messages.
+     */
+    public static ByteBuffer map(
+        Path file,
+        int magic,
+        int version,
+        int headerBytes,
+        String kind,
+        Environment env) throws IOException
+    {
+        final ByteBuffer mapped;
+        try (final var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (mapped.remaining() < headerBytes || mapped.getInt() != magic) {
+            throw new IOException("Not a " + kind + ": " + file);
+        }
+        if (mapped.getInt() != version) {
+            throw new IOException("Unsupported " + kind + " version: " + file);
+        }
+
+        final var rows = mapped.getInt();
+        final var cols = mapped.getInt();
+        final var fingerprint = mapped.getLong();
+
+        if (rows != env.getRows() || cols != env.getCols()
+            || fingerprint != env.fingerprint()) {
+            return null;
+        }
+        return mapped;
+    }
+
+    /* Reads the table at file if it fits, otherwise builds and writes one */
+    public static <T> T loadOrBuild(
+        Path file,
+        Reader<T> reader,
+        Supplier<T> builder,
+        Writer<T> writer) throws IOException
+    {
+        if (Files.exists(file)) {
+            final var loaded = reader.read(file);
+            if (loaded != null) {
+                return loaded;
+            }
+        }
+
+        final var built = builder.get();
+        writer.write(built, file);
+        return built;
+    }
+}
@@ -0,0 +1,18 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event covering one RunSimulation.updateEnvironment
+ * timestep.
+ */
+@Name("csc411.SimulationTick")
+@Label("Simulation Tick")
+@Category({"CSC411", "Simulation"})
+@Description("One timestep of the simulation moving every robot")
+public class TickEvent extends jdk.jfr.Event
+{
+    @Label("Timestep") public int timestep;
+    @Label("Robots") public int robots;
+}
@@ -4,7 +4,12 @@ import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import javax.swing.JFrame;
 import javax.swing.JPanel;
@@ -47,7 +52,39 @@ public class VisualizeSimulation extends JFrame {
     	add(envPanel);
 	}
 	
-	public static void main(String[] args) {
+	/* Animates a recorded SearchTrace over its environment instead of
+	 * running a robot; nothing is searched again. The map is the one the
+	 * trace names unless map (see MapLoader.open) is given, and must be
+	 * the map the trace was recorded on.
+	 */
+	public VisualizeSimulation(Path trace, String map) throws IOException {
+		SearchTrace.Reader reader = new SearchTrace.Reader(trace);
+		String source = map != null ? map : reader.source;
+		if (source == null) {
+			reader.close();
+			throw new IOException("The trace does not name its map; pass one after " + trace);
+		}
+		Environment env = MapLoader.open(source);
+		if (env.getRows() != reader.rows || env.getCols() != reader.cols
+				|| env.fingerprint() != reader.fingerprint) {
+			reader.close();
+			throw new IOException("The trace was not recorded on " + source);
+		}
+		add(new ReplayPanel(env, reader));
+	}
+	
+	public static void main(String[] args) throws IOException {
+		// java VisualizeSimulation --replay <trace file> [env_id | map file | .snap]
+		if (args.length >= 2 && args[0].equals("--replay")) {
+			String map = args.length >= 3 ? args[2] : null;
+			JFrame frame = new VisualizeSimulation(Paths.get(args[1]), map);
+			frame.setTitle("CSC 520 - Search Replay");
+			frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+			frame.pack();
+			frame.setVisible(true);
+			return;
+		}
+		
 		// String searchAlgorithm = args[0];
 		// int start_row = Integer.parseInt(args[1]);
 		// int start_col = Integer.parseInt(args[2]);
@@ -172,16 +209,16 @@ class EnvironmentPanel extends JPanel{
 	protected void paintComponent(Graphics g) {
 		super.paintComponent(g);
 		// Paint Environment Tiles
-		Tile[][] tiles = env.getTiles();
 		for(int row = 0; row < env.getRows(); row++)
 		    for(int col = 0; col < env.getCols(); col++) {
-		    	if(tiles[row][col].getStatus() == TileStatus.PLAIN) {
+		    	TileStatus status = env.getTileStatus(row, col);
+		    	if(status == TileStatus.PLAIN) {
                     g.setColor(Properties.LIGHTGREEN);
-                } else if(tiles[row][col].getStatus() == TileStatus.PUDDLE) {
+                } else if(status == TileStatus.PUDDLE) {
                     g.setColor(Properties.LIGHTBLUE);
-                } else if(tiles[row][col].getStatus() == TileStatus.MOUNTAIN) {
+                } else if(status == TileStatus.MOUNTAIN) {
                     g.setColor(Properties.BLACK);
-                } else if(tiles[row][col].getStatus() == TileStatus.TARGET) {
+                } else if(status == TileStatus.TARGET) {
                     g.setColor(Properties.RED);
                 }
 		        // fillRect(int x, int y, int width, int height)
@@ -202,4 +239,150 @@ class EnvironmentPanel extends JPanel{
     		            TILESIZE/2, TILESIZE/2);
 		}
 	}
-}
\ No newline at end of file
+}
+
+/*
+ * Replays a SearchTrace: expanded tiles are shaded yellow, tiles on the
+ * frontier (given a parent but not yet expanded) orange, and once the
+ * trace ends the path found is drawn by following the recorded parents.
+ */
+@SuppressWarnings("serial")
+class ReplayPanel extends JPanel {
+	private static final byte FRONTIER = 1, EXPANDED = 2, PATH = 3;
+	// Trace events consumed per animation frame, at least; long traces
+	// go faster so that any replay takes about REPLAY_FRAMES frames
+	private static final int EVENTS_PER_FRAME = 8;
+	private static final int FRAME_MILLIS = 50;
+	private static final int REPLAY_FRAMES = 400;
+	
+	private Timer timer;
+	private Environment env;
+	private SearchTrace.Reader reader;
+	private long eventsPerFrame;
+	private byte[] state;
+	private byte[] parentMove;
+	private int tileSize;
+	private int expanded = 0;
+	
+	public ReplayPanel(Environment env, SearchTrace.Reader reader) {
+		if (reader.rows != env.getRows() || reader.cols != env.getCols()) {
+			throw new IllegalArgumentException(String.format(
+					"Trace is %dx%d but the environment is %dx%d",
+					reader.rows, reader.cols, env.getRows(), env.getCols()));
+		}
+		this.env = env;
+		this.reader = reader;
+		this.state = new byte[env.getRows() * env.getCols()];
+		this.parentMove = new byte[env.getRows() * env.getCols()];
+		Arrays.fill(parentMove, (byte) -1);
+		// Keep large maps on screen
+		int longest = Math.max(env.getRows(), env.getCols());
+		this.tileSize = Math.max(1, Math.min(EnvironmentPanel.TILESIZE, 1000 / longest));
+		if (reader.targetRow >= 0) {
+			env.setTarget(reader.targetRow, reader.targetCol);
+		}
+		setPreferredSize(new Dimension(env.getCols()*tileSize, env.getRows()*tileSize));
+		this.eventsPerFrame = Math.max(EVENTS_PER_FRAME, reader.events / REPLAY_FRAMES);
+		
+		this.timer = new Timer(FRAME_MILLIS, new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				try {
+					for (long i = 0; i < eventsPerFrame; i++) {
+						if (!step()) {
+							timer.stop();
+							reader.close();
+							break;
+						}
+					}
+				} catch (IOException ex) {
+					timer.stop();
+					throw new UncheckedIOException(ex);
+				}
+				repaint();
+			}
+		});
+		this.timer.start();
+	}
+	
+	// Applies one trace event; false once the trace is exhausted
+	private boolean step() throws IOException {
+		if (!reader.next()) {
+			return false;
+		}
+		int cell = reader.row * env.getCols() + reader.col;
+		switch (reader.type) {
+		case SearchTrace.EXPAND:
+			state[cell] = EXPANDED;
+			expanded++;
+			break;
+		case SearchTrace.PARENT:
+			if (state[cell] != EXPANDED) {
+				state[cell] = FRONTIER;
+			}
+			parentMove[cell] = (byte) reader.action.ordinal();
+			break;
+		case SearchTrace.END:
+			System.out.printf("Replayed %d expansions, target reached: %b\n",
+					expanded, reader.reachedTarget);
+			if (reader.reachedTarget) {
+				markPath(reader.row, reader.col);
+			}
+			break;
+		default:
+			break;
+		}
+		return true;
+	}
+	
+	// Walks the recorded parent moves back from the end of the search
+	private void markPath(int row, int col) {
+		int cell = row * env.getCols() + col;
+		for (int steps = 0; steps < state.length && state[cell] != PATH; steps++) {
+			state[cell] = PATH;
+			int move = parentMove[cell];
+			if (move < 0) {
+				break;
+			}
+			row -= PathFinder.rowVector[move];
+			col -= PathFinder.colVector[move];
+			cell = row * env.getCols() + col;
+		}
+	}
+	
+	@Override
+	protected void paintComponent(Graphics g) {
+		super.paintComponent(g);
+		for(int row = 0; row < env.getRows(); row++)
+		    for(int col = 0; col < env.getCols(); col++) {
+		    	TileStatus status = env.getTileStatus(row, col);
+		    	byte cellState = state[row * env.getCols() + col];
+		    	if (cellState == PATH) {
+		    		g.setColor(Properties.INDIGO);
+		    	} else if (status == TileStatus.TARGET) {
+                    g.setColor(Properties.RED);
+		    	} else if (cellState == EXPANDED) {
+		    		g.setColor(Properties.LIGHTYELLOW);
+		    	} else if (cellState == FRONTIER) {
+		    		g.setColor(Properties.LIGHTORANGE);
+		    	} else if(status == TileStatus.PLAIN) {
+                    g.setColor(Properties.LIGHTGREEN);
+                } else if(status == TileStatus.PUDDLE) {
+                    g.setColor(Properties.LIGHTBLUE);
+                } else if(status == TileStatus.MOUNTAIN) {
+                    g.setColor(Properties.BLACK);
+                } else {
+                    g.setColor(Properties.CONCRETE);
+                }
+		        g.fillRect(col * tileSize, row * tileSize, tileSize, tileSize);
+		        if (tileSize >= 4) {
+		        	g.setColor(Properties.BLACK);
+		        	g.drawRect(col * tileSize, row * tileSize, tileSize, tileSize);
+		        }
+		    }
+		// Start tile
+		g.setColor(Properties.GREEN);
+		g.fillOval(reader.startCol * tileSize + tileSize/4,
+				reader.startRow * tileSize + tileSize/4,
+				tileSize/2, tileSize/2);
+	}
+}